@@ -0,0 +1,86 @@
+package NCDESim.algorithms;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * AliasTable draws indices from a discrete distribution in O(1) per draw, using Vose's alias method. The table is built
+ * in O(n) from non-negative weights, so drawing k indices from n weights costs O(n + k).
+ * Each index i is drawn with probability weights[i] / sum of weights; getProbability() returns this probability, so the
+ * distribution sampled can be checked against the weights.
+ */
+public class AliasTable {
+
+    private final double[] probability; // Probability of keeping column i rather than its alias
+    private final int[] alias;
+    private final double[] distribution; // Normalised weights
+
+    /**
+     * @param weights non-negative weights, not all zero
+     * @throws IllegalArgumentException if a weight is negative or not finite, or if all weights are zero
+     */
+    public AliasTable(double[] weights) throws IllegalArgumentException {
+        int n = weights.length;
+        double sum = 0;
+        for (double w : weights) {
+            if (!(w >= 0) || Double.isInfinite(w)) throw new IllegalArgumentException("Weights must be finite and non-negative, but found " + w);
+            sum += w;
+        }
+        if (!(sum > 0)) throw new IllegalArgumentException("At least one weight must be positive");
+
+        probability = new double[n];
+        alias = new int[n];
+        distribution = new double[n];
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int numberSmall = 0, numberLarge = 0;
+        for (int i = 0; i < n; i++) {
+            distribution[i] = weights[i] / sum;
+            scaled[i] = distribution[i] * n;
+            if (scaled[i] < 1) {
+                small[numberSmall++] = i;
+            } else {
+                large[numberLarge++] = i;
+            }
+        }
+        while (numberSmall > 0 && numberLarge > 0) {
+            int s = small[--numberSmall];
+            int l = large[--numberLarge];
+            probability[s] = scaled[s];
+            alias[s] = l;
+            scaled[l] = (scaled[l] + scaled[s]) - 1;
+            if (scaled[l] < 1) {
+                small[numberSmall++] = l;
+            } else {
+                large[numberLarge++] = l;
+            }
+        }
+        while (numberLarge > 0) {
+            probability[large[--numberLarge]] = 1;
+        }
+        while (numberSmall > 0) {
+            probability[small[--numberSmall]] = 1; // Only reached because of rounding errors
+        }
+    }
+
+    /**
+     * @param rnd random number generator
+     * @return index drawn with probability getProbability(index)
+     */
+    public int sample(RandomGenerator rnd) {
+        int column = rnd.nextInt(probability.length);
+        return (rnd.nextDouble() < probability[column]) ? column : alias[column];
+    }
+
+    /**
+     * @param i index
+     * @return probability that sample() returns i
+     */
+    public double getProbability(int i) {
+        return distribution[i];
+    }
+
+    public int size() {
+        return probability.length;
+    }
+}
@@ -0,0 +1,76 @@
+package NCDESim.algorithms;
+
+import java.util.SplittableRandom;
+
+/**
+ * CounterBasedRandom produces random numbers as a function of a seed and a set of keys (e.g. year, agent id and the
+ * purpose of the draw), rather than from the state of a generator. A draw therefore does not depend on how many draws
+ * were made before it, or on the order in which agents are processed, so processes can run in parallel and reproduce
+ * exactly. Keys are combined using the SplitMix64 mixing function.
+ * Single draws are obtained with nextDouble(). When an agent needs several draws for the same purpose, stream()
+ * returns a generator seeded from the keys.
+ */
+public class CounterBasedRandom {
+
+    public static final long MODEL_ID = 0; // Agent id used for draws made by the model rather than by an agent
+
+    // Purposes of draws, used as keys so that draws made for different purposes are independent
+    public static final int HEALTH_SHOCK = 1;
+    public static final int PERSON_CREATION = 2;
+    public static final int FIRM_CREATION = 3;
+    public static final int JOB_SAMPLING = 4;
+    public static final int JOB_SEARCH_ORDER = 5;
+    public static final int GLOBAL_HEALTH_SHOCK = 6;
+    public static final int FIRM_CLONING_SELECTION = 7;
+
+    private static final double DOUBLE_UNIT = 0x1.0p-53; // 1.0 / (1L << 53)
+
+    /**
+     * @param seed seed of the simulation
+     * @param time year of the simulation
+     * @param agentId id of the agent
+     * @param purpose purpose of the draw
+     * @return uniformly distributed double in [0, 1)
+     */
+    public static double nextDouble(long seed, int time, long agentId, int purpose) {
+        return (key(seed, time, agentId, purpose) >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * @param seed seed of the simulation
+     * @param time year of the simulation
+     * @param agentId id of the agent
+     * @param purpose purpose of the draws
+     * @return generator of the stream of draws identified by the keys
+     */
+    public static SplittableRandom stream(long seed, int time, long agentId, int purpose) {
+        return new SplittableRandom(key(seed, time, agentId, purpose));
+    }
+
+    /**
+     * As stream(long, int, long, int), for processes in which an agent draws for the same purpose several times a year.
+     * @param seed seed of the simulation
+     * @param time year of the simulation
+     * @param agentId id of the agent
+     * @param purpose purpose of the draws
+     * @param round number of the draw within the year
+     * @return generator of the stream of draws identified by the keys
+     */
+    public static SplittableRandom stream(long seed, int time, long agentId, int purpose, int round) {
+        return new SplittableRandom(mix(key(seed, time, agentId, purpose) ^ round));
+    }
+
+    private static long key(long seed, int time, long agentId, int purpose) {
+        long z = mix(seed + purpose);
+        z = mix(z ^ agentId);
+        return mix(z ^ time);
+    }
+
+    // SplitMix64 mixing function
+    public static long mix(long z) {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -1,17 +1,22 @@
 package NCDESim.algorithms;
 
 import NCDESim.model.AbstractFirm;
-import NCDESim.model.objects.Job;
 
 import java.util.*;
+import java.util.random.RandomGenerator;
 
 public class Helpers {
 
-    // Method picking n random values from original list of jobs
-    public static List<Job> pickNRandomJobs(List<Job> lst, int n) {
-        List<Job> copy = new ArrayList<Job>(lst);
-        Collections.shuffle(copy);
-        return n > copy.size() ? copy.subList(0, copy.size()) : copy.subList(0, n);
+    /**
+     * Shuffles the list in place. Uses the same algorithm as Collections.shuffle(), so that the result is identical
+     * for a java.util.Random generator, but accepts any RandomGenerator, e.g. a stream of CounterBasedRandom.
+     * @param lst list to shuffle. Should support random access.
+     * @param rnd random number generator
+     */
+    public static <T> void shuffle(List<T> lst, RandomGenerator rnd) {
+        for (int i = lst.size(); i > 1; i--) {
+            Collections.swap(lst, i - 1, rnd.nextInt(i));
+        }
     }
 
     public static List<AbstractFirm> pickNRandomFirms(List<AbstractFirm> lst, int n) {
@@ -20,14 +25,6 @@ public class Helpers {
         return n > copy.size() ? copy.subList(0, copy.size()) : copy.subList(0, n);
     }
 
-    public static double findHighestProfitFromListOfFirms(List<AbstractFirm> lst) {
-        double highestProfit = -Double.MAX_VALUE;
-        for (AbstractFirm f : lst) {
-            if (f.getProfit() > highestProfit) highestProfit = f.getProfit();
-        }
-        return highestProfit;
-    }
-
     /**
      * Calculate asinh(v) (Inverse Hyperbolic Sine Transformation)
      * @param v numerical value which the inverse hyperbolic sine transformation should be applied to.
@@ -0,0 +1,114 @@
+package NCDESim.algorithms;
+
+import java.util.Arrays;
+
+/**
+ * P2Quantile estimates a quantile of a stream of values in constant memory, using the P-square algorithm of Jain and
+ * Chlamtac (1985). Five markers track the minimum, the maximum, the quantile and two intermediate quantiles; their
+ * heights are adjusted with a piecewise-parabolic formula as values arrive. Until five values have been observed, the
+ * quantile is calculated exactly from the values themselves.
+ */
+public class P2Quantile {
+
+    private final double p; // Quantile to estimate, between 0 and 1
+    private final double[] height = new double[5]; // Heights of the markers
+    private final double[] position = new double[5]; // Actual positions of the markers, from 1
+    private final double[] desiredPosition = new double[5];
+    private final double[] increment; // Increments of the desired positions per value observed
+    private long count;
+
+    /**
+     * @param p quantile to estimate, between 0 and 1 (e.g. 0.5 for the median)
+     */
+    public P2Quantile(double p) {
+        if (!(p > 0 && p < 1)) throw new IllegalArgumentException("Quantile must be between 0 and 1, but was " + p);
+        this.p = p;
+        this.increment = new double[] {0, p / 2, p, (1 + p) / 2, 1};
+        reset();
+    }
+
+    public void reset() {
+        count = 0;
+        for (int i = 0; i < 5; i++) {
+            position[i] = i + 1;
+        }
+        desiredPosition[0] = 1;
+        desiredPosition[1] = 1 + 2 * p;
+        desiredPosition[2] = 1 + 4 * p;
+        desiredPosition[3] = 3 + 2 * p;
+        desiredPosition[4] = 5;
+    }
+
+    public void add(double x) {
+        if (count < 5) {
+            height[(int) count++] = x;
+            if (count == 5) Arrays.sort(height);
+            return;
+        }
+        count++;
+
+        // Find the cell containing x, extending the extreme markers if needed
+        int k;
+        if (x < height[0]) {
+            height[0] = x;
+            k = 0;
+        } else if (x >= height[4]) {
+            height[4] = Math.max(height[4], x);
+            k = 3;
+        } else {
+            k = 0;
+            while (x >= height[k + 1]) k++;
+        }
+        for (int i = k + 1; i < 5; i++) {
+            position[i]++;
+        }
+        for (int i = 0; i < 5; i++) {
+            desiredPosition[i] += increment[i];
+        }
+
+        // Adjust the heights of the middle markers if they are too far from their desired positions
+        for (int i = 1; i < 4; i++) {
+            double d = desiredPosition[i] - position[i];
+            if ((d >= 1 && position[i + 1] - position[i] > 1) || (d <= -1 && position[i - 1] - position[i] < -1)) {
+                int sign = (d > 0) ? 1 : -1;
+                double candidate = parabolic(i, sign);
+                if (height[i - 1] < candidate && candidate < height[i + 1]) {
+                    height[i] = candidate;
+                } else {
+                    height[i] = linear(i, sign);
+                }
+                position[i] += sign;
+            }
+        }
+    }
+
+    /**
+     * @return estimate of the quantile, or NaN if no value has been observed
+     */
+    public double getQuantile() {
+        if (count == 0) return Double.NaN;
+        if (count < 5) {
+            double[] values = Arrays.copyOf(height, (int) count);
+            Arrays.sort(values);
+            double pos = p * (count - 1); // Linear interpolation between order statistics
+            int lower = (int) Math.floor(pos);
+            int upper = Math.min(lower + 1, (int) count - 1);
+            return values[lower] + (pos - lower) * (values[upper] - values[lower]);
+        }
+        return height[2];
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    private double parabolic(int i, int sign) {
+        return height[i] + sign / (position[i + 1] - position[i - 1])
+                * ((position[i] - position[i - 1] + sign) * (height[i + 1] - height[i]) / (position[i + 1] - position[i])
+                + (position[i + 1] - position[i] - sign) * (height[i] - height[i - 1]) / (position[i] - position[i - 1]));
+    }
+
+    private double linear(int i, int sign) {
+        return height[i] + sign * (height[i + sign] - height[i]) / (position[i + sign] - position[i]);
+    }
+}
@@ -0,0 +1,72 @@
+package NCDESim.algorithms;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ParallelLoops runs loops over index ranges (e.g. over the individuals or firms of the model) on a ForkJoinPool.
+ * The range is split recursively into chunks of at most grainSize indices, which are processed by the threads of the
+ * pool. The body of the loop must only modify state belonging to the indices it is given.
+ */
+public class ParallelLoops {
+
+    private static final int DEFAULT_GRAIN_SIZE = 1024;
+
+    private final ForkJoinPool pool;
+    private final int grainSize;
+
+    /**
+     * @param numberOfThreads number of threads used. If smaller than 1, the number of available processors is used.
+     */
+    public ParallelLoops(int numberOfThreads) {
+        this.pool = new ForkJoinPool((numberOfThreads < 1) ? Runtime.getRuntime().availableProcessors() : numberOfThreads);
+        this.grainSize = DEFAULT_GRAIN_SIZE;
+    }
+
+    @FunctionalInterface
+    public interface RangeBody {
+        void run(int from, int to); // Process indices from (inclusive) to to (exclusive)
+    }
+
+    /**
+     * Runs the body over the range [0, n), in parallel chunks, and waits until all chunks are processed.
+     * @param n size of the range
+     * @param body loop body applied to each chunk
+     */
+    public void forRange(int n, RangeBody body) {
+        if (n <= grainSize) {
+            body.run(0, n);
+        } else {
+            pool.invoke(new RangeTask(0, n, body));
+        }
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private class RangeTask extends RecursiveAction {
+        private final int from, to;
+        private final RangeBody body;
+
+        RangeTask(int from, int to, RangeBody body) {
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grainSize) {
+                body.run(from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeTask(from, middle, body), new RangeTask(middle, to, body));
+            }
+        }
+    }
+}
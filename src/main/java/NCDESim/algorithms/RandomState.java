@@ -0,0 +1,93 @@
+package NCDESim.algorithms;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+/**
+ * RandomState reads and restores the state of a java.util.Random generator, such as the global generator of the
+ * simulation engine, so that a checkpointed run can continue with the same draws.
+ * The 48-bit state of Random is private, so it is recovered from the outputs of a copy of the generator, made by
+ * serialisation: the first output holds the upper 32 bits of the next state, and the 16 lower bits are found by checking
+ * which candidate produces the second output. Stepping the linear congruential generator back once gives the current
+ * state. The recovered state is checked against a second copy, so that subclasses of Random generating numbers in a
+ * different way are rejected rather than restored incorrectly.
+ * A Gaussian held for the next call of nextGaussian() is not part of the state; the model does not use nextGaussian().
+ */
+public class RandomState {
+
+    private static final long MULTIPLIER = 0x5DEECE66DL; // Constants of the generator, as in java.util.Random
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+    private static final long INVERSE_MULTIPLIER = inverse(MULTIPLIER) & MASK; // MULTIPLIER * INVERSE_MULTIPLIER = 1 modulo 2^48
+    private static final int NUMBER_OF_CHECKS = 4;
+
+    /**
+     * @param rnd generator, which is not modified
+     * @return 48-bit state of the generator
+     * @throws IllegalArgumentException if the generator does not generate numbers as java.util.Random does
+     */
+    public static long getState(Random rnd) {
+        Random copy = copy(rnd);
+        long first = copy.nextInt() & 0xFFFFFFFFL;
+        int second = copy.nextInt();
+        long state = -1;
+        for (long low = 0; low < (1L << 16); low++) {
+            long next = (first << 16) | low;
+            if ((int) (step(next) >>> 16) == second) {
+                state = ((next - ADDEND) * INVERSE_MULTIPLIER) & MASK;
+                break;
+            }
+        }
+
+        Random check = copy(rnd);
+        Random restored = new Random();
+        setState(restored, state);
+        for (int i = 0; i < NUMBER_OF_CHECKS; i++) {
+            if (state < 0 || check.nextLong() != restored.nextLong()) throw new IllegalArgumentException("State of generator " + rnd.getClass().getName() + " cannot be recovered");
+        }
+        return state;
+    }
+
+    /**
+     * Sets the state of the generator, so that it produces the same numbers as the generator whose state was read.
+     * @param rnd   generator to modify
+     * @param state 48-bit state returned by getState()
+     */
+    public static void setState(Random rnd, long state) {
+        rnd.setSeed(state ^ MULTIPLIER); // setSeed() scrambles the seed with the multiplier
+    }
+
+    private static long step(long state) {
+        return (state * MULTIPLIER + ADDEND) & MASK;
+    }
+
+    // Inverse of an odd number modulo 2^64, by Newton's iteration. Each iteration doubles the number of correct bits.
+    private static long inverse(long a) {
+        long inverse = a;
+        for (int i = 0; i < 6; i++) {
+            inverse *= 2 - a * inverse;
+        }
+        return inverse;
+    }
+
+    private static Random copy(Random rnd) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(rnd);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                return (Random) in.readObject();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Generator " + rnd.getClass().getName() + " cannot be copied", e);
+        }
+    }
+}
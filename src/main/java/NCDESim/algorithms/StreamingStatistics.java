@@ -0,0 +1,120 @@
+package NCDESim.algorithms;
+
+import java.util.Arrays;
+
+/**
+ * StreamingStatistics calculates the mean, standard deviation, skewness, kurtosis, minimum, maximum and median of a
+ * stream of values in a single pass. Central moments are updated with the formulas of Welford and Terriberry, which are
+ * numerically stable. The median is estimated in constant memory with a P2Quantile sketch or, in exact mode, calculated
+ * from the values stored in a buffer reused from one snapshot to the next.
+ * Standard deviation, skewness and kurtosis are the bias-corrected sample statistics returned by DescriptiveStatistics of
+ * Apache Commons Math, which the collector used before, so results are comparable.
+ */
+public class StreamingStatistics {
+
+    private final boolean exactMedian;
+    private final P2Quantile medianSketch;
+    private double[] values; // Values observed, in exact mode
+
+    private long n;
+    private double mean, m2, m3, m4; // Mean, and sums of powers of deviations from the mean
+    private double min, max;
+
+    /**
+     * @param exactMedian if true, values are stored so that the median is exact. Otherwise, the median is estimated in
+     *                    constant memory.
+     */
+    public StreamingStatistics(boolean exactMedian) {
+        this.exactMedian = exactMedian;
+        this.medianSketch = exactMedian ? null : new P2Quantile(0.5);
+        this.values = exactMedian ? new double[1024] : null;
+        reset();
+    }
+
+    // Clears the values observed, keeping allocated memory
+    public void reset() {
+        n = 0;
+        mean = m2 = m3 = m4 = 0;
+        min = Double.NaN;
+        max = Double.NaN;
+        if (medianSketch != null) medianSketch.reset();
+    }
+
+    public void add(double x) {
+        long n1 = n;
+        n++;
+        double delta = x - mean;
+        double deltaN = delta / n;
+        double deltaN2 = deltaN * deltaN;
+        double term1 = delta * deltaN * n1;
+        mean += deltaN;
+        m4 += term1 * deltaN2 * ((double) n * n - 3 * n + 3) + 6 * deltaN2 * m2 - 4 * deltaN * m3;
+        m3 += term1 * deltaN * (n - 2) - 3 * deltaN * m2;
+        m2 += term1;
+        if (n1 == 0 || x < min) min = x;
+        if (n1 == 0 || x > max) max = x;
+
+        if (exactMedian) {
+            if (n1 == values.length) values = Arrays.copyOf(values, values.length * 2);
+            values[(int) n1] = x;
+        } else {
+            medianSketch.add(x);
+        }
+    }
+
+    public long getN() {
+        return n;
+    }
+
+    public double getMean() {
+        return (n > 0) ? mean : Double.NaN;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getVariance() {
+        if (n == 0) return Double.NaN;
+        if (n == 1) return 0;
+        return m2 / (n - 1);
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    public double getSkewness() {
+        if (n < 3) return Double.NaN;
+        double variance = getVariance();
+        if (variance < 10E-20) return 0;
+        return ((double) n / ((n - 1) * (double) (n - 2))) * m3 / (variance * Math.sqrt(variance));
+    }
+
+    // Excess kurtosis
+    public double getKurtosis() {
+        if (n < 4) return Double.NaN;
+        double variance = getVariance();
+        if (variance < 10E-20) return 0;
+        double nd = n;
+        double coefficient = nd * (nd + 1) / ((nd - 1) * (nd - 2) * (nd - 3));
+        double term = 3 * (nd - 1) * (nd - 1) / ((nd - 2) * (nd - 3));
+        return coefficient * m4 / (variance * variance) - term;
+    }
+
+    /**
+     * @return median of the values observed. In exact mode, the mean of the two middle values if n is even.
+     */
+    public double getMedian() {
+        if (n == 0) return Double.NaN;
+        if (!exactMedian) return medianSketch.getQuantile();
+        int size = (int) n;
+        Arrays.sort(values, 0, size);
+        int middle = size / 2;
+        return (size % 2 == 1) ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+    }
+}
@@ -0,0 +1,29 @@
+package NCDESim.algorithms.utility;
+
+/**
+ * Constant elasticity of substitution utility: TFP * (alpha * health^rho + (1 - alpha) * wage^rho)^(1 / rho).
+ * Rho must not be zero; as rho approaches zero the function approaches Cobb-Douglas utility.
+ * The model has no separate TFP and alpha parameters for this function: it is created with those of the Cobb-Douglas
+ * utility (cobbDouglasTFP and cobbDouglasAlpha, see NCDESimModel.resolveUtilityFunction()).
+ */
+public class CESUtility implements UtilityFunction {
+
+    private final double tfp, alpha, rho;
+
+    public CESUtility(double tfp, double alpha, double rho) {
+        if (rho == 0.) throw new IllegalArgumentException("Rho parameter of the CES utility function must not be zero. Use the Cobb-Douglas utility function instead.");
+        this.tfp = tfp;
+        this.alpha = alpha;
+        this.rho = rho;
+    }
+
+    @Override
+    public double healthTerm(double health) {
+        return alpha * Math.pow(health, rho);
+    }
+
+    @Override
+    public double evaluateWithHealthTerm(double healthTerm, double wage) {
+        return tfp * Math.pow(healthTerm + (1 - alpha) * Math.pow(wage, rho), 1 / rho);
+    }
+}
@@ -0,0 +1,60 @@
+package NCDESim.algorithms.utility;
+
+/**
+ * Cobb-Douglas utility: TFP * health^alpha * wage^beta.
+ * Use of() to obtain an instance, which returns a specialised implementation based on square roots when
+ * alpha = beta = 0.5.
+ */
+public class CobbDouglasUtility implements UtilityFunction {
+
+    private final double tfp, alpha, beta;
+
+    protected CobbDouglasUtility(double tfp, double alpha, double beta) {
+        this.tfp = tfp;
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    public static CobbDouglasUtility of(double tfp, double alpha, double beta) {
+        if (alpha == 0.5 && beta == 0.5) {
+            return new SquareRoot(tfp);
+        }
+        return new CobbDouglasUtility(tfp, alpha, beta);
+    }
+
+    @Override
+    public double healthTerm(double health) {
+        return tfp * Math.pow(health, alpha);
+    }
+
+    @Override
+    public double evaluateWithHealthTerm(double healthTerm, double wage) {
+        return healthTerm * Math.pow(wage, beta);
+    }
+
+    /**
+     * Cobb-Douglas utility with alpha = beta = 0.5, evaluated with square roots instead of Math.pow.
+     * Math.sqrt is correctly rounded, while Math.pow(x, 0.5) is only required to be within 1 ulp of the exact result, so
+     * utilities can differ from those calculated with Math.pow in the last bit. Comparisons of utilities between jobs,
+     * and hence choices of jobs, can therefore differ in the rare case of offers whose utilities are within 1 ulp.
+     */
+    public static final class SquareRoot extends CobbDouglasUtility {
+
+        private final double tfp;
+
+        private SquareRoot(double tfp) {
+            super(tfp, 0.5, 0.5);
+            this.tfp = tfp;
+        }
+
+        @Override
+        public double healthTerm(double health) {
+            return tfp * Math.sqrt(health);
+        }
+
+        @Override
+        public double evaluateWithHealthTerm(double healthTerm, double wage) {
+            return healthTerm * Math.sqrt(wage);
+        }
+    }
+}
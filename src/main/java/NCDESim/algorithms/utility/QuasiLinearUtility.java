@@ -0,0 +1,26 @@
+package NCDESim.algorithms.utility;
+
+/**
+ * Utility which is linear in wage: TFP * (wage + alpha * ln(1 + health)).
+ * The model has no separate TFP and alpha parameters for this function: it is created with those of the Cobb-Douglas
+ * utility (cobbDouglasTFP and cobbDouglasAlpha, see NCDESimModel.resolveUtilityFunction()).
+ */
+public class QuasiLinearUtility implements UtilityFunction {
+
+    private final double tfp, alpha;
+
+    public QuasiLinearUtility(double tfp, double alpha) {
+        this.tfp = tfp;
+        this.alpha = alpha;
+    }
+
+    @Override
+    public double healthTerm(double health) {
+        return alpha * Math.log1p(health);
+    }
+
+    @Override
+    public double evaluateWithHealthTerm(double healthTerm, double wage) {
+        return tfp * (wage + healthTerm);
+    }
+}
@@ -0,0 +1,33 @@
+package NCDESim.algorithms.utility;
+
+/**
+ * UtilityFunction defines the function used to calculate person's well-being from their health and the wage of a job.
+ * Utility is split into a term which depends only on health, and the evaluation of that term with a wage. As health does
+ * not change while a person evaluates job offers, the health term can be calculated once and reused for every offer.
+ * Implementations are resolved once from the UtilityFunctions enum by NCDESimModel.resolveUtilityFunction(), so that calls from
+ * the hot path of the simulation are monomorphic.
+ */
+public interface UtilityFunction {
+
+    /**
+     * @param health health of the person
+     * @return the part of utility which depends only on health
+     */
+    double healthTerm(double health);
+
+    /**
+     * @param healthTerm health term of the person, as returned by healthTerm()
+     * @param wage wage of the job
+     * @return utility of the person holding a job with the given wage
+     */
+    double evaluateWithHealthTerm(double healthTerm, double wage);
+
+    /**
+     * @param health health of the person
+     * @param wage wage of the job
+     * @return utility of the person holding a job with the given wage
+     */
+    default double evaluate(double health, double wage) {
+        return evaluateWithHealthTerm(healthTerm(health), wage);
+    }
+}
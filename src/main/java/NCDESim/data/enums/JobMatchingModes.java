@@ -0,0 +1,10 @@
+package NCDESim.data.enums;
+
+/**
+ * Ways in which job offers are matched to persons searching for a job during the JobSearch process.
+ */
+public enum JobMatchingModes {
+    Sequential, // Persons search one at a time, in random order, each accepting the best offer sampled
+    Rounds, // Persons propose to the best offer sampled at the same time. Each offer goes to the proposer with the highest priority, the others search again in the next round
+    DeferredAcceptance, // Persons and firms clear the market together in a stable matching (worker-proposing Gale-Shapley), firms ranking persons by productivity
+}
@@ -0,0 +1,12 @@
+package NCDESim.data.enums;
+
+/**
+ * Ways in which persons find the job offer they consider accepting during job search.
+ * TopOfBook and FullInformation pick offers by wage using the JobBook, which assumes that utility increases with wage
+ * for a given level of health, as is the case for the utility functions in UtilityFunctions.
+ */
+public enum JobSearchModes {
+    RandomSample, // Sample search intensity offers at random and pick the one with the highest utility
+    TopOfBook, // Draw search intensity offers at random and pick the one with the highest wage, in O(log J)
+    FullInformation, // Pick the offer with the highest wage among all offers available, in O(log J)
+}
@@ -2,4 +2,6 @@ package NCDESim.data.enums;
 
 public enum UtilityFunctions {
     CobbDouglas,
+    CES,
+    QuasiLinear,
 }
@@ -0,0 +1,141 @@
+package NCDESim.data.export;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * AsyncExportPipeline runs export tasks on a background writer thread, in the order they were submitted, so that the
+ * simulation can proceed while snapshots of earlier years are compressed and written. Tasks must only use data captured
+ * when they were submitted (e.g. ColumnarSnapshotWriter.Chunk), not the live agents.
+ * The queue is bounded: submit() waits while it is full, so that a slow disk slows the simulation down instead of
+ * filling the memory with snapshots. flush() waits until all tasks submitted have been run. The writer thread is a daemon
+ * thread, and a shutdown hook flushes the pipeline when the JVM exits, so that snapshots are not lost if the simulation
+ * ends before flush() or close() is called.
+ * An exception thrown by a task is reported by the next call to submit(), flush() or close().
+ * The pipeline is used for columnar snapshots and checkpoints only. Exports to .csv files (JAS-mine's DataExport) and
+ * to the output database (DataExport or JdbcSnapshotWriter) are written on the simulation thread, so they remain
+ * synchronous whether or not the pipeline is used.
+ */
+public class AsyncExportPipeline implements Closeable {
+
+    private final static Logger log = Logger.getLogger(AsyncExportPipeline.class);
+
+    @FunctionalInterface
+    public interface Task {
+        void run() throws IOException;
+    }
+
+    private static final Task STOP = () -> {};
+
+    private final BlockingQueue<Task> tasks;
+    private final Thread writer;
+    private final Thread shutdownHook;
+    private volatile IOException failure; // First exception thrown by a task
+    private boolean closed;
+
+    /**
+     * @param capacity maximum number of tasks waiting to be run
+     */
+    public AsyncExportPipeline(int capacity) {
+        this.tasks = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::runTasks, "NCDESim export writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        this.shutdownHook = new Thread(this::flushQuietly, "NCDESim export flush");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Queues a task, waiting while the queue is full.
+     * @param task task to run on the writer thread
+     * @throws IOException if an earlier task failed, or if interrupted while waiting
+     */
+    public void submit(Task task) throws IOException {
+        if (closed) throw new IllegalStateException("Export pipeline is closed");
+        checkFailure();
+        try {
+            tasks.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to queue an export task");
+        }
+    }
+
+    /**
+     * Waits until all tasks submitted have been run.
+     * @throws IOException if a task failed, or if interrupted while waiting
+     */
+    public void flush() throws IOException {
+        if (!closed && writer.isAlive()) {
+            CountDownLatch done = new CountDownLatch(1);
+            submit(done::countDown);
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for export tasks");
+            }
+        }
+        checkFailure();
+    }
+
+    // Runs the tasks submitted, then stops the writer thread
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        try {
+            tasks.put(STOP);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for export tasks");
+        } finally {
+            closed = true;
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // The JVM is already shutting down
+            }
+        }
+        checkFailure();
+    }
+
+    private void runTasks() {
+        while (true) {
+            Task task;
+            try {
+                task = tasks.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task == STOP) return;
+            try {
+                task.run();
+            } catch (IOException | RuntimeException e) {
+                if (failure == null) failure = (e instanceof IOException) ? (IOException) e : new IOException(e);
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            log.error("Export tasks failed when the JVM exited", e);
+        }
+    }
+
+    /**
+     * @throws IOException the first exception thrown by a task, if a task has failed
+     */
+    public void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) throw e;
+    }
+}
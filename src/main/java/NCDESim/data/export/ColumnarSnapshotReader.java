@@ -0,0 +1,184 @@
+package NCDESim.data.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * ColumnarSnapshotReader reads snapshots written by ColumnarSnapshotWriter, e.g. in tests or for analysis of the output
+ * of the simulation. Only the header and the footer are read when the file is opened; each snapshot is then read from
+ * its offset in the footer. If the file has no footer, because the writer was not closed, the index is rebuilt by
+ * scanning the chunk headers, and a chunk cut short at the end of the file is ignored.
+ */
+public class ColumnarSnapshotReader implements Closeable {
+
+    private final RandomAccessFile file;
+    private final List<String> variables;
+    private final Map<Integer, long[]> index = new LinkedHashMap<>(); // Number of rows and offset of each chunk, by year
+
+    /**
+     * @param path file written by ColumnarSnapshotWriter
+     * @throws IOException if the file cannot be read or is not a columnar snapshot file
+     */
+    public ColumnarSnapshotReader(Path path) throws IOException {
+        this.file = new RandomAccessFile(path.toFile(), "r");
+        if (file.readLong() != ColumnarSnapshotWriter.MAGIC) throw new IOException(path + " is not a columnar snapshot file");
+        String[] names = new String[file.readInt()];
+        for (int v = 0; v < names.length; v++) {
+            names[v] = file.readUTF();
+        }
+        this.variables = List.of(names);
+
+        long firstChunk = file.getFilePointer();
+        if (!readFooter(firstChunk)) scanChunks(firstChunk);
+    }
+
+    // Reads the index from the footer. Returns false if the file has no footer.
+    private boolean readFooter(long firstChunk) throws IOException {
+        long trailer = file.length() - 2 * Long.BYTES;
+        if (trailer < firstChunk + Integer.BYTES) return false;
+        file.seek(trailer);
+        long footerOffset = file.readLong();
+        if (file.readLong() != ColumnarSnapshotWriter.FOOTER_MAGIC || footerOffset < firstChunk || footerOffset > trailer - Integer.BYTES) return false;
+        file.seek(footerOffset);
+        int numberOfChunks = file.readInt();
+        ByteBuffer footer = ByteBuffer.allocate(numberOfChunks * ColumnarSnapshotWriter.INDEX_ENTRY_LENGTH);
+        file.readFully(footer.array());
+        for (int c = 0; c < numberOfChunks; c++) {
+            index.put(footer.getInt(), new long[] {footer.getInt(), footer.getLong()});
+        }
+        return true;
+    }
+
+    // Rebuilds the index from the headers of the chunks, up to the last complete chunk
+    private void scanChunks(long firstChunk) throws IOException {
+        ByteBuffer chunkHeader = ByteBuffer.allocate(ColumnarSnapshotWriter.CHUNK_HEADER_LENGTH);
+        long offset = firstChunk;
+        while (offset + ColumnarSnapshotWriter.CHUNK_HEADER_LENGTH <= file.length()) {
+            file.seek(offset);
+            file.readFully(chunkHeader.array());
+            chunkHeader.clear();
+            int year = chunkHeader.getInt();
+            int numberOfRows = chunkHeader.getInt();
+            chunkHeader.get(); // Compressed flag
+            int storedLength = chunkHeader.getInt();
+            long next = offset + ColumnarSnapshotWriter.CHUNK_HEADER_LENGTH + storedLength;
+            if (storedLength < 0 || next > file.length()) break; // Chunk cut short
+            index.put(year, new long[] {numberOfRows, offset});
+            offset = next;
+        }
+    }
+
+    // Names of the variables, in the order of the columns
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    // Years of the snapshots in the file, in the order they were written
+    public int[] getYears() {
+        return index.keySet().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @param year year of the snapshot
+     * @return snapshot of the given year
+     * @throws IOException if the file cannot be read, or has no snapshot for the year
+     */
+    public Snapshot read(int year) throws IOException {
+        long[] entry = index.get(year);
+        if (entry == null) throw new IOException("No snapshot for year " + year);
+        file.seek(entry[1]);
+        ByteBuffer chunkHeader = ByteBuffer.allocate(ColumnarSnapshotWriter.CHUNK_HEADER_LENGTH);
+        file.readFully(chunkHeader.array());
+        chunkHeader.getInt(); // Year
+        int numberOfRows = chunkHeader.getInt();
+        boolean compressed = chunkHeader.get() != 0;
+        int storedLength = chunkHeader.getInt();
+        int length = chunkHeader.getInt();
+
+        byte[] stored = new byte[storedLength];
+        file.readFully(stored);
+        byte[] bytes = stored;
+        if (compressed) {
+            bytes = new byte[length];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(stored);
+                int inflated = 0;
+                while (inflated < length && !inflater.finished()) {
+                    inflated += inflater.inflate(bytes, inflated, length - inflated);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt snapshot for year " + year, e);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        ByteBuffer data = ByteBuffer.wrap(bytes);
+        long[] ids = new long[numberOfRows];
+        data.asLongBuffer().get(ids);
+        double[][] columns = new double[variables.size()][numberOfRows];
+        for (int v = 0; v < columns.length; v++) {
+            data.position((v + 1) * numberOfRows * Double.BYTES);
+            data.asDoubleBuffer().get(columns[v]);
+        }
+        return new Snapshot(year, ids, columns);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Snapshot of the agents in a given year: ids of the agents and one column of values per variable.
+     */
+    public class Snapshot {
+
+        private final int year;
+        private final long[] ids;
+        private final double[][] columns;
+
+        private Snapshot(int year, long[] ids, double[][] columns) {
+            this.year = year;
+            this.ids = ids;
+            this.columns = columns;
+        }
+
+        public int getYear() {
+            return year;
+        }
+
+        public int getNumberOfRows() {
+            return ids.length;
+        }
+
+        public long[] getIds() {
+            return ids;
+        }
+
+        /**
+         * @param variable name of the variable
+         * @return values of the variable, in the same order as getIds()
+         */
+        public double[] getColumn(String variable) {
+            int v = variables.indexOf(variable);
+            if (v < 0) throw new IllegalArgumentException("No variable " + variable + " in the snapshot. Variables are " + variables);
+            return columns[v];
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{year=" + year + ", rows=" + ids.length + ", variables=" + variables + ", ids=" + Arrays.toString(Arrays.copyOf(ids, Math.min(ids.length, 5))) + "...}";
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package NCDESim.data.export;
+
+import microsim.statistics.IDoubleSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.ToLongFunction;
+import java.util.zip.Deflater;
+
+/**
+ * ColumnarSnapshotWriter exports snapshots of agents to a binary file in which each variable is stored as a column of
+ * doubles, instead of as rows of text. Each snapshot is written as a chunk holding the ids of the agents followed by one
+ * column per variable, optionally compressed with Deflater. A footer indexes chunks by year, so that a snapshot can be
+ * read without reading the file from the start. The footer is written once, by close(); a file without footer, e.g. if
+ * the simulation stopped before close() was called, is read by ColumnarSnapshotReader by scanning the chunk headers.
+ * A snapshot can be exported in two steps: capture() copies the variables of the agents into a buffer, and write()
+ * compresses and writes the buffer. Two buffers are used in turn, so that write() can run on another thread (see
+ * AsyncExportPipeline) while the simulation proceeds and the next snapshot is captured.
+ *
+ * File layout (big-endian):
+ *  header: MAGIC, number of variables V, V variable names (modified UTF-8)
+ *  chunks: year (int), number of rows n (int), compressed (byte), length of data as stored (int), length of data
+ *          uncompressed (int), data: n ids (long), then V columns of n values (double)
+ *  footer: number of chunks C, C entries of year (int), number of rows (int), offset of the chunk (long)
+ *  trailer: offset of the footer (long), FOOTER_MAGIC
+ */
+public class ColumnarSnapshotWriter<T extends IDoubleSource> implements Closeable {
+
+    public static final long MAGIC = 0x4E434445434F4C31L; // "NCDECOL1"
+    public static final long FOOTER_MAGIC = 0x4E43444549445831L; // "NCDEIDX1"
+    static final int CHUNK_HEADER_LENGTH = 4 * Integer.BYTES + 1; // Year, number of rows, compressed flag, stored and uncompressed lengths
+    static final int INDEX_ENTRY_LENGTH = 2 * Integer.BYTES + Long.BYTES;
+    private static final int NUMBER_OF_BUFFERS = 2;
+
+    private final RandomAccessFile file;
+    private final Enum<?>[] variables;
+    private final ToLongFunction<? super T> id;
+    private final Deflater deflater; // Null if chunks are not compressed
+    private final List<long[]> index = new ArrayList<>(); // Year, number of rows and offset of each chunk
+    private long footerOffset; // Offset at which the next chunk is written, and at which the footer is written on close
+    private final BlockingQueue<ByteBuffer> freeBuffers = new ArrayBlockingQueue<>(NUMBER_OF_BUFFERS); // Buffers not holding a snapshot waiting to be written
+    private byte[] compressed = new byte[0];
+
+    /**
+     * @param path      file to create. An existing file is overwritten.
+     * @param variables variables to export, passed to IDoubleSource.getDoubleValue()
+     * @param id        returns the id of an agent
+     * @param compress  if true, chunks are compressed
+     * @throws IOException if the file cannot be written
+     */
+    public ColumnarSnapshotWriter(Path path, Enum<?>[] variables, ToLongFunction<? super T> id, boolean compress) throws IOException {
+        this.file = new RandomAccessFile(path.toFile(), "rw");
+        this.file.setLength(0);
+        this.variables = variables.clone();
+        this.id = id;
+        this.deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+        for (int i = 0; i < NUMBER_OF_BUFFERS; i++) {
+            freeBuffers.add(ByteBuffer.allocate(0));
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerOut = new DataOutputStream(header);
+        headerOut.writeLong(MAGIC);
+        headerOut.writeInt(variables.length);
+        for (Enum<?> variable : variables) {
+            headerOut.writeUTF(variable.name());
+        }
+        file.write(header.toByteArray());
+        footerOffset = header.size();
+    }
+
+    /**
+     * Writes a snapshot of the agents as a chunk, in a single pass over the agents.
+     * @param year   year of the snapshot
+     * @param agents agents to export
+     * @throws IOException if the file cannot be written
+     */
+    public void export(int year, Collection<? extends T> agents) throws IOException {
+        try {
+            write(capture(year, agents));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a buffer");
+        }
+    }
+
+    /**
+     * Copies the variables of the agents into a buffer, in a single pass over the agents. Waits if both buffers hold
+     * snapshots not yet written.
+     * @param year   year of the snapshot
+     * @param agents agents to export
+     * @return snapshot, to be passed to write()
+     * @throws InterruptedException if interrupted while waiting for a buffer
+     */
+    public Chunk capture(int year, Collection<? extends T> agents) throws InterruptedException {
+        int numberOfRows = agents.size();
+        int length = Math.multiplyExact(Math.multiplyExact(numberOfRows, variables.length + 1), Long.BYTES);
+        ByteBuffer data = freeBuffers.take();
+        if (data.capacity() < length) data = ByteBuffer.allocate(length);
+        data.clear();
+
+        int row = 0;
+        for (T agent : agents) {
+            data.putLong(row * Long.BYTES, id.applyAsLong(agent));
+            for (int v = 0; v < variables.length; v++) {
+                data.putDouble(((v + 1) * numberOfRows + row) * Double.BYTES, agent.getDoubleValue(variables[v]));
+            }
+            row++;
+        }
+        return new Chunk(year, numberOfRows, length, data);
+    }
+
+    /**
+     * Writes a snapshot captured by capture() as a chunk, and releases its buffer. Snapshots must be written in the order
+     * they were captured, by one thread at a time.
+     * @param chunk snapshot to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Chunk chunk) throws IOException {
+        try {
+            write(chunk.year, chunk.numberOfRows, chunk.length, chunk.data);
+        } finally {
+            freeBuffers.add(chunk.data);
+        }
+    }
+
+    /**
+     * Releases the buffer of a snapshot captured by capture() which will not be written, e.g. because it could not be
+     * queued for writing.
+     * @param chunk snapshot to discard
+     */
+    public void discard(Chunk chunk) {
+        freeBuffers.add(chunk.data);
+    }
+
+    private void write(int year, int numberOfRows, int length, ByteBuffer data) throws IOException {
+        byte[] bytes = data.array();
+        int storedLength = length;
+        if (deflater != null) {
+            deflater.reset();
+            deflater.setInput(bytes, 0, length);
+            deflater.finish();
+            if (compressed.length < length + 64) compressed = new byte[length + 64];
+            storedLength = 0;
+            while (!deflater.finished()) {
+                if (storedLength == compressed.length) compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                storedLength += deflater.deflate(compressed, storedLength, compressed.length - storedLength);
+            }
+            bytes = compressed;
+        }
+
+        ByteBuffer chunkHeader = ByteBuffer.allocate(CHUNK_HEADER_LENGTH);
+        chunkHeader.putInt(year).putInt(numberOfRows).put((byte) (deflater != null ? 1 : 0)).putInt(storedLength).putInt(length);
+        file.seek(footerOffset);
+        file.write(chunkHeader.array());
+        file.write(bytes, 0, storedLength);
+        index.add(new long[] {year, numberOfRows, footerOffset});
+        footerOffset += CHUNK_HEADER_LENGTH + storedLength;
+    }
+
+    // Snapshot captured in a buffer, waiting to be written
+    public static final class Chunk {
+        private final int year, numberOfRows, length;
+        private final ByteBuffer data;
+
+        private Chunk(int year, int numberOfRows, int length, ByteBuffer data) {
+            this.year = year;
+            this.numberOfRows = numberOfRows;
+            this.length = length;
+            this.data = data;
+        }
+    }
+
+    // Writes the footer and closes the file
+    @Override
+    public void close() throws IOException {
+        try {
+            writeFooter();
+        } finally {
+            if (deflater != null) deflater.end();
+            file.close();
+        }
+    }
+
+    // Written in a single call, as RandomAccessFile does not buffer writes
+    private void writeFooter() throws IOException {
+        ByteBuffer footer = ByteBuffer.allocate(Integer.BYTES + index.size() * INDEX_ENTRY_LENGTH + 2 * Long.BYTES);
+        footer.putInt(index.size());
+        for (long[] entry : index) {
+            footer.putInt((int) entry[0]).putInt((int) entry[1]).putLong(entry[2]);
+        }
+        footer.putLong(footerOffset).putLong(FOOTER_MAGIC);
+        file.seek(footerOffset);
+        file.write(footer.array());
+        file.setLength(footerOffset + footer.capacity());
+    }
+}
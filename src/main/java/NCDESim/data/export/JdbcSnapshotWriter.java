@@ -0,0 +1,207 @@
+package NCDESim.data.export;
+
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.MappedSuperclass;
+import jakarta.persistence.Transient;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.function.ToLongFunction;
+
+/**
+ * JdbcSnapshotWriter exports snapshots of agents to a table of a database (the H2 output database) through a batched
+ * prepared statement, instead of persisting the agents one by one as entities. Rows are added to the batch as the agents
+ * are iterated over and sent every BATCH_SIZE rows, and the transaction is committed every snapshotsPerCommit snapshots,
+ * and when the writer is closed.
+ * Columns are those of the key (ID, SIMULATION_TIME and SIMULATION_RUN) and the fields of the class, and of superclasses
+ * annotated @MappedSuperclass, which are neither static, transient nor annotated @Transient, and are of a primitive,
+ * boxed primitive, String or enum type (enums are stored by ordinal, as JPA does by default). Fields of other types are
+ * not exported.
+ * The table is created if it does not exist. If it exists, e.g. from an earlier run, rows are inserted by column name,
+ * and the table is rejected if it lacks a column written or has another column which must not be null. The index on
+ * (ID, SIMULATION_TIME) is created with the table, or, if deferIndexes is true, when the writer is closed, so that rows
+ * are inserted without maintaining the index.
+ */
+public class JdbcSnapshotWriter<T> implements AutoCloseable {
+
+    private static final int BATCH_SIZE = 1000; // Rows sent to the database at once
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final int FIRST_FIELD_PARAMETER = 4; // After the parameters of the key
+
+    private final Connection connection;
+    private final String table;
+    private final ToLongFunction<? super T> id;
+    private final long simulationRun;
+    private final List<MethodHandle> getters = new ArrayList<>();
+    private final PreparedStatement insert;
+    private final int snapshotsPerCommit;
+    private final boolean deferIndexes;
+    private int rowsInBatch;
+    private int snapshotsSinceCommit;
+
+    /**
+     * @param connection         connection to the database, owned by the caller. Auto-commit is switched off.
+     * @param type               class of the agents
+     * @param id                 returns the id of an agent
+     * @param simulationRun      number of the run, stored in every row
+     * @param snapshotsPerCommit number of snapshots written in each transaction
+     * @param deferIndexes       if true, the index is created when the writer is closed
+     * @throws SQLException if the table cannot be created, or exists with columns which do not match
+     */
+    public JdbcSnapshotWriter(Connection connection, Class<? extends T> type, ToLongFunction<? super T> id, long simulationRun, int snapshotsPerCommit, boolean deferIndexes) throws SQLException {
+        if (snapshotsPerCommit < 1) throw new IllegalArgumentException("Number of snapshots per commit must be positive, but was " + snapshotsPerCommit);
+        this.connection = connection;
+        this.table = type.getSimpleName().toUpperCase();
+        this.id = id;
+        this.simulationRun = simulationRun;
+        this.snapshotsPerCommit = snapshotsPerCommit;
+        this.deferIndexes = deferIndexes;
+
+        Map<String, String> columns = new LinkedHashMap<>(); // SQL type by column name, in the order of the parameters of the insert
+        columns.put("ID", "BIGINT NOT NULL");
+        columns.put("SIMULATION_TIME", "DOUBLE NOT NULL");
+        columns.put("SIMULATION_RUN", "BIGINT NOT NULL");
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Class<?> c = type; c == type || (c != null && c.isAnnotationPresent(MappedSuperclass.class)); c = c.getSuperclass()) { // Fields of superclasses which are not mapped are not persisted by JPA either
+            for (Field field : c.getDeclaredFields()) {
+                String sqlType = sqlType(field.getType());
+                if (sqlType == null || Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())
+                        || field.isAnnotationPresent(Transient.class) || field.isAnnotationPresent(EmbeddedId.class)) continue;
+                field.setAccessible(true);
+                try {
+                    getters.add(lookup.unreflectGetter(field).asType(GETTER_TYPE)); // Adapted once, so that rows are read with invokeExact
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException("Cannot read field " + field, e);
+                }
+                columns.put(field.getName().toUpperCase(), sqlType);
+            }
+        }
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            if (hasTable()) {
+                checkColumns(columns);
+            } else {
+                StringJoiner definitions = new StringJoiner(", ", "(", ")");
+                columns.forEach((name, sqlType) -> definitions.add(name + " " + sqlType));
+                statement.execute("CREATE TABLE " + table + " " + definitions);
+            }
+            if (!deferIndexes) createIndex(statement);
+        }
+        connection.commit();
+        StringJoiner names = new StringJoiner(", ", "(", ")");
+        StringJoiner parameters = new StringJoiner(", ", "(", ")");
+        for (String name : columns.keySet()) {
+            names.add(name);
+            parameters.add("?");
+        }
+        this.insert = connection.prepareStatement("INSERT INTO " + table + " " + names + " VALUES " + parameters);
+    }
+
+    /**
+     * Inserts a row per agent, in a single pass over the agents.
+     * @param time   simulation time of the snapshot
+     * @param agents agents to export
+     * @throws SQLException if the rows cannot be inserted
+     */
+    public void export(double time, Collection<? extends T> agents) throws SQLException {
+        for (T agent : agents) {
+            insert.setLong(1, id.applyAsLong(agent));
+            insert.setDouble(2, time);
+            insert.setLong(3, simulationRun);
+            for (int i = 0; i < getters.size(); i++) {
+                Object value;
+                try {
+                    value = (Object) getters.get(i).invokeExact((Object) agent);
+                } catch (Throwable e) {
+                    throw new IllegalStateException("Cannot read column " + (i + FIRST_FIELD_PARAMETER) + " of " + table, e);
+                }
+                insert.setObject(i + FIRST_FIELD_PARAMETER, (value instanceof Enum<?>) ? ((Enum<?>) value).ordinal() : value);
+            }
+            insert.addBatch();
+            if (++rowsInBatch == BATCH_SIZE) executeBatch();
+        }
+        if (++snapshotsSinceCommit == snapshotsPerCommit) commit();
+    }
+
+    // Writes the rows not yet committed and creates the deferred index. The connection is left open.
+    @Override
+    public void close() throws SQLException {
+        try {
+            commit();
+            if (deferIndexes) {
+                try (Statement statement = connection.createStatement()) {
+                    createIndex(statement);
+                }
+                connection.commit();
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    private boolean hasTable() throws SQLException {
+        try (ResultSet tables = connection.getMetaData().getTables(null, null, table, null)) {
+            return tables.next();
+        }
+    }
+
+    // Rejects an existing table into which rows cannot be inserted by column name
+    private void checkColumns(Map<String, String> columns) throws SQLException {
+        Map<String, Boolean> existing = new HashMap<>(); // Whether a value must be inserted, by column name
+        try (ResultSet rows = connection.getMetaData().getColumns(null, null, table, null)) {
+            while (rows.next()) {
+                boolean required = rows.getInt("NULLABLE") == DatabaseMetaData.columnNoNulls && rows.getString("COLUMN_DEF") == null;
+                existing.put(rows.getString("COLUMN_NAME").toUpperCase(), required);
+            }
+        }
+        for (String name : columns.keySet()) {
+            if (!existing.containsKey(name)) throw new SQLException("Table " + table + " exists without column " + name + ". Remove the table or use another output database.");
+        }
+        for (Map.Entry<String, Boolean> column : existing.entrySet()) {
+            if (column.getValue() && !columns.containsKey(column.getKey())) throw new SQLException("Table " + table + " exists with column " + column.getKey() + ", which is not written and must not be null. Remove the table or use another output database.");
+        }
+    }
+
+    private void createIndex(Statement statement) throws SQLException {
+        statement.execute("CREATE INDEX IF NOT EXISTS " + table + "_KEY ON " + table + " (ID, SIMULATION_TIME)");
+    }
+
+    private void executeBatch() throws SQLException {
+        if (rowsInBatch > 0) insert.executeBatch();
+        rowsInBatch = 0;
+    }
+
+    private void commit() throws SQLException {
+        executeBatch();
+        connection.commit();
+        snapshotsSinceCommit = 0;
+    }
+
+    // Type of the column storing a field of the given type, or null if fields of this type are not exported
+    private static String sqlType(Class<?> type) {
+        if (type == int.class || type == Integer.class) return "INT";
+        if (type == long.class || type == Long.class) return "BIGINT";
+        if (type == double.class || type == Double.class) return "DOUBLE";
+        if (type == float.class || type == Float.class) return "REAL";
+        if (type == boolean.class || type == Boolean.class) return "BOOLEAN";
+        if (type == String.class) return "VARCHAR";
+        if (type.isEnum()) return "INT";
+        return null;
+    }
+}
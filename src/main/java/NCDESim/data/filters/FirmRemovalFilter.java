@@ -10,6 +10,10 @@ import org.apache.commons.collections4.Predicate;
  */
 public class FirmRemovalFilter<T extends AbstractFirm> implements Predicate<T> {
 
+    // Reasons for removal, combined as bits in the value returned by exitReasons()
+    public static final int SIZE = 1;
+    public static final int PROFIT = 2;
+
     private final int firmMinimumSize;
     private final double firmMinimumProfit;
 
@@ -30,13 +34,25 @@ public class FirmRemovalFilter<T extends AbstractFirm> implements Predicate<T> {
      */
     @Override
     public boolean evaluate(T firm) {
+        return exitReasons(firm) != 0;
+    }
+
+    /**
+     * Evaluates both conditions for removal of a firm. Does not modify the firm, so can be called in parallel.
+     *
+     * @param firm The firm to evaluate.
+     * @return Reasons for which the firm should be removed: SIZE and / or PROFIT, or 0 if the firm should not be removed.
+     * @throws IllegalArgumentException If the firm argument is null.
+     */
+    public int exitReasons(T firm) {
         if (firm == null) {
             throw new IllegalArgumentException("The firm argument cannot be null.");
         }
 
-        return ((firm.getEmployeesSet().size() <= firmMinimumSize)  // Firms with no employees are removed
-                || (firm.getProfit() <= firmMinimumProfit) // Firms with no profits are removed
-        );
+        int reasons = 0;
+        if (firm.getEmployees().size() <= firmMinimumSize) reasons |= SIZE; // Firms with no employees are removed
+        if (firm.getProfit() <= firmMinimumProfit) reasons |= PROFIT; // Firms with no profits are removed
+        return reasons;
     }
 }
 
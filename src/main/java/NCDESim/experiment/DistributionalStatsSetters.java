@@ -0,0 +1,57 @@
+package NCDESim.experiment;
+
+import NCDESim.algorithms.StreamingStatistics;
+import NCDESim.model.SimulationStatistics;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * DistributionalStatsSetters records the statistics of a distribution in the fields of SimulationStatistics named
+ * prefix_mean, prefix_median, prefix_min, prefix_max, prefix_sd, prefix_kurtosis and prefix_skewness.
+ * Setters are looked up once, when the object is created, and bound to method handles, so recording statistics does not
+ * use reflection. If a field is missing, creation fails instead of the statistic being silently skipped.
+ */
+public class DistributionalStatsSetters {
+
+    private static final String[] STATISTICS = {"mean", "median", "min", "max", "sd", "kurtosis", "skewness"}; // Order of the setters
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, double.class);
+
+    private final MethodHandle[] setters = new MethodHandle[STATISTICS.length];
+
+    /**
+     * @param prefix prefix of the names of the fields of SimulationStatistics, e.g. "outcome_person_age"
+     * @throws IllegalArgumentException if SimulationStatistics does not have a setter for one of the fields
+     */
+    public DistributionalStatsSetters(String prefix) throws IllegalArgumentException {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        for (int i = 0; i < STATISTICS.length; i++) {
+            String field = prefix + "_" + STATISTICS[i];
+            String setter = "set" + Character.toUpperCase(field.charAt(0)) + field.substring(1); // Name of the setter generated by Lombok
+            try {
+                setters[i] = lookup.findVirtual(SimulationStatistics.class, setter, SETTER_TYPE);
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new IllegalArgumentException("SimulationStatistics has no public setter " + setter + "(double) for field " + field, e);
+            }
+        }
+    }
+
+    /**
+     * @param statistics   object storing aggregate statistics
+     * @param distribution distribution whose statistics are recorded
+     */
+    public void set(SimulationStatistics statistics, StreamingStatistics distribution) {
+        try {
+            setters[0].invokeExact(statistics, distribution.getMean());
+            setters[1].invokeExact(statistics, distribution.getMedian());
+            setters[2].invokeExact(statistics, distribution.getMin());
+            setters[3].invokeExact(statistics, distribution.getMax());
+            setters[4].invokeExact(statistics, distribution.getStandardDeviation());
+            setters[5].invokeExact(statistics, distribution.getKurtosis());
+            setters[6].invokeExact(statistics, distribution.getSkewness());
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not record distributional statistics", t); // Setters generated by Lombok do not throw
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package NCDESim.experiment;
 
+import NCDESim.algorithms.StreamingStatistics;
+import NCDESim.data.export.AsyncExportPipeline;
+import NCDESim.data.export.ColumnarSnapshotWriter;
+import NCDESim.data.export.JdbcSnapshotWriter;
 import NCDESim.model.AbstractFirm;
+import NCDESim.model.FirmTypeA;
 import NCDESim.model.NCDESimModel;
 import NCDESim.model.Person;
 import NCDESim.model.SimulationStatistics;
@@ -10,19 +15,24 @@ import lombok.ToString;
 import microsim.annotation.GUIparameter;
 import microsim.data.DataExport;
 import microsim.engine.AbstractSimulationCollectorManager;
+import microsim.engine.SimulationEngine;
 import microsim.engine.SimulationManager;
 import microsim.event.EventGroup;
 import microsim.event.EventListener;
 import microsim.event.Order;
-import microsim.statistics.CrossSection;
 import microsim.statistics.IDoubleSource;
-import microsim.statistics.functions.MeanArrayFunction;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.apache.log4j.Logger;
 
-import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+
 
 @Getter
 @Setter
@@ -35,27 +45,50 @@ public class NCDESimCollector extends AbstractSimulationCollectorManager impleme
 	boolean exportMicrodataToCSV = false;				//If true, microdata will be recorded to .csv files in the output directory
 	@GUIparameter(description = "Toggle to export snapshot of aggregate statistics to .csv files")
 	boolean exportAggregateStatisticsToCSV = true;				//If true, aggregate data will be recorded to .csv files in the output directory
+	@GUIparameter(description = "Toggle to export snapshot of microdata to binary columnar files (.ncol), read with ColumnarSnapshotReader")
+	boolean exportMicrodataToColumnar = false;
+	@GUIparameter(description = "Toggle to compress snapshots in columnar files")
+	boolean compressColumnarExport = true;
+	@GUIparameter(description = "Toggle to write columnar snapshots on a background thread, so that the simulation proceeds while they are compressed and written")
+	boolean asynchronousExport = true;
+	@GUIparameter(description = "Set the number of snapshots which can wait to be written before the simulation waits for the background thread")
+	Integer exportQueueCapacity = 4;
 	@GUIparameter(description = "Toggle to export snapshot to output database")
 	boolean exportToDatabase = false;		//If true, data will be recorded in the output database in the output directory
+	@GUIparameter(description = "Toggle to write snapshots to the output database in batches through JDBC, instead of persisting agents one by one")
+	boolean batchDatabaseExport = true;
+	@GUIparameter(description = "Set the number of snapshots written to the output database in each transaction")
+	Integer snapshotsPerDatabaseCommit = 10;
+	@GUIparameter(description = "Toggle to create the indexes of the output database at the end of the simulation, instead of maintaining them on each insert")
+	boolean deferDatabaseIndexes = true;
 	@GUIparameter(description = "Set the time at which to start exporting snapshots to the database and/or .csv files")
 	Double timeOfFirstSnapshot = 0.;
 	@GUIparameter(description = "Set the time between snapshots to be exported to the database and/or .csv files")
 	Double timeStepsBetweenSnapshots = 1.;
+	@GUIparameter(description = "Toggle to calculate exact medians, storing every value. If false, medians are estimated in constant memory (P2 estimate), which is faster for large populations but approximate.")
+	boolean exactMedians = true;
 
 	// DataExport objects to handle exporting data to database and/or .csv files
 	private DataExport exportIndividuals;
 	private DataExport exportFirmsTypeA;
 	private DataExport exportStatistics; // Exports aggregate statistics to .csv file
+	private ColumnarSnapshotWriter<Person> columnarIndividuals; // Export microdata to columnar files, if exportMicrodataToColumnar is true
+	private ColumnarSnapshotWriter<AbstractFirm> columnarFirms;
+	private AsyncExportPipeline exportPipeline; // Writes columnar snapshots on a background thread, if asynchronousExport is true
+	private Connection databaseConnection; // Connection to the output database, if exportToDatabase and batchDatabaseExport are true
+	private JdbcSnapshotWriter<Person> databaseIndividuals;
+	private JdbcSnapshotWriter<AbstractFirm> databaseFirms;
+	private JdbcSnapshotWriter<SimulationStatistics> databaseStatistics;
 
 	private SimulationStatistics statistics; // Object which defines and stores aggregate statistics to be exported to a .csv file by the exportStatistics
 	//Other variables
 	private NCDESimModel model;
 
 	// Variables defined below are more complicated aggregate statistics, which are first calculated by the collector and then recorded in the Statistics .csv file
-	private CrossSection.Integer employedCS, jobChangingCS;
-	private CrossSection.Double personAgeCS, personHealthCS, personProductivityCS, personUtilityCS, personAmenitiesCS, personWageCS;
-	private CrossSection.Double firmAgeCS, firmJobsPostedCS, firmProfitCS, firmSizeCS;
-	private MeanArrayFunction employmentRateMAF, jobChangingRateMAF;
+	private StreamingStatistics personAgeStats, personHealthStats, personProductivityStats, personUtilityStats, personAmenitiesStats, personWageStats;
+	private StreamingStatistics firmAgeStats, firmJobsPostedStats, firmProfitStats, firmSizeStats;
+	private DistributionalStatsSetters personAgeSetters, personHealthSetters, personProductivitySetters, personUtilitySetters, personAmenitiesSetters, personWageSetters; // Record the statistics of each distribution in SimulationStatistics
+	private DistributionalStatsSetters firmAgeSetters, firmJobsPostedSetters, firmProfitSetters, firmSizeSetters;
 	private double outcome_employmentRate, outcome_jobChangingRate; // Employment rate in the model, calculated as share of individuals in employment among all individuals (employed and unemployed: there are two states in the model)
 
 	private double outcome_person_age_mean, outcome_person_age_median, outcome_person_age_min, outcome_person_age_max, outcome_person_age_sd, outcome_person_age_kurtosis, outcome_person_age_skewness;
@@ -89,9 +122,56 @@ public class NCDESimCollector extends AbstractSimulationCollectorManager impleme
 
 		statistics = new SimulationStatistics();
 
-		exportIndividuals = new DataExport(model.getIndividuals(), exportToDatabase, exportMicrodataToCSV);
-		exportFirmsTypeA = new DataExport(model.getFirms(), exportToDatabase, exportMicrodataToCSV);
-		exportStatistics = new DataExport(statistics, exportToDatabase, exportAggregateStatisticsToCSV);
+		// Distributions are accumulated in a single pass over persons and firms, reusing the same objects every snapshot
+		personAgeStats = new StreamingStatistics(exactMedians);
+		personHealthStats = new StreamingStatistics(exactMedians);
+		personProductivityStats = new StreamingStatistics(exactMedians);
+		personUtilityStats = new StreamingStatistics(exactMedians);
+		personAmenitiesStats = new StreamingStatistics(exactMedians);
+		personWageStats = new StreamingStatistics(exactMedians);
+		firmAgeStats = new StreamingStatistics(exactMedians);
+		firmJobsPostedStats = new StreamingStatistics(exactMedians);
+		firmProfitStats = new StreamingStatistics(exactMedians);
+		firmSizeStats = new StreamingStatistics(exactMedians);
+
+		// Setters are bound once. Fails here if a field is missing from SimulationStatistics.
+		personAgeSetters = new DistributionalStatsSetters("outcome_person_age");
+		personHealthSetters = new DistributionalStatsSetters("outcome_person_health");
+		personProductivitySetters = new DistributionalStatsSetters("outcome_person_productivity");
+		personUtilitySetters = new DistributionalStatsSetters("outcome_person_utility");
+		personAmenitiesSetters = new DistributionalStatsSetters("outcome_person_amenities");
+		personWageSetters = new DistributionalStatsSetters("outcome_person_wage");
+		firmAgeSetters = new DistributionalStatsSetters("outcome_firm_age");
+		firmJobsPostedSetters = new DistributionalStatsSetters("outcome_firm_jobs_posted");
+		firmProfitSetters = new DistributionalStatsSetters("outcome_firm_profit");
+		firmSizeSetters = new DistributionalStatsSetters("outcome_firm_size");
+
+		boolean persistEntities = exportToDatabase && !batchDatabaseExport; // If false, DataExport only writes .csv files
+		exportIndividuals = new DataExport(model.getIndividuals(), persistEntities, exportMicrodataToCSV);
+		exportFirmsTypeA = new DataExport(model.getFirms(), persistEntities, exportMicrodataToCSV);
+		exportStatistics = new DataExport(statistics, persistEntities, exportAggregateStatisticsToCSV);
+		if (exportToDatabase && batchDatabaseExport) {
+			String url = "jdbc:h2:file:" + Paths.get(SimulationEngine.getInstance().getCurrentExperiment().getOutputFolder(), "database", "out").toAbsolutePath(); // Same file as the output database of JAS-mine
+			try {
+				databaseConnection = DriverManager.getConnection(url, "sa", "");
+				long simulationRun = SimulationEngine.getInstance().getCurrentRunNumber();
+				databaseIndividuals = new JdbcSnapshotWriter<>(databaseConnection, Person.class, person -> person.getKey().getId(), simulationRun, snapshotsPerDatabaseCommit, deferDatabaseIndexes);
+				databaseFirms = new JdbcSnapshotWriter<>(databaseConnection, FirmTypeA.class, firm -> firm.getKey().getId(), simulationRun, snapshotsPerDatabaseCommit, deferDatabaseIndexes);
+				databaseStatistics = new JdbcSnapshotWriter<>(databaseConnection, SimulationStatistics.class, stats -> stats.getKey().getId(), simulationRun, snapshotsPerDatabaseCommit, deferDatabaseIndexes);
+			} catch (SQLException e) {
+				throw new IllegalStateException("Could not open output database " + url, e);
+			}
+		}
+		if (exportMicrodataToColumnar) {
+			Path outputFolder = Paths.get(SimulationEngine.getInstance().getCurrentExperiment().getOutputFolder());
+			try {
+				columnarIndividuals = new ColumnarSnapshotWriter<>(outputFolder.resolve("Person.ncol"), Person.DoubleVariables.values(), person -> person.getKey().getId(), compressColumnarExport);
+				columnarFirms = new ColumnarSnapshotWriter<>(outputFolder.resolve("FirmTypeA.ncol"), AbstractFirm.Variables.values(), firm -> firm.getKey().getId(), compressColumnarExport);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Could not create columnar export files in " + outputFolder, e);
+			}
+			if (asynchronousExport) exportPipeline = new AsyncExportPipeline(exportQueueCapacity);
+		}
 
 		log.debug("Collector objects created");	}
 
@@ -106,7 +186,12 @@ public class NCDESimCollector extends AbstractSimulationCollectorManager impleme
 			collectorEvents.addEvent(this, Processes.DumpFirms);
 
 
-			getEngine().getEventQueue().scheduleRepeat(collectorEvents, timeOfFirstSnapshot, Order.AFTER_ALL.getOrdering()-1, timeStepsBetweenSnapshots);
+			double firstSnapshot = timeOfFirstSnapshot;
+			if (model.getTime() > firstSnapshot) { // Resumed from a checkpoint: the first snapshot is the first one due from the year resumed
+				firstSnapshot += Math.ceil((model.getTime() - firstSnapshot) / timeStepsBetweenSnapshots) * timeStepsBetweenSnapshots;
+			}
+			getEngine().getEventQueue().scheduleRepeat(collectorEvents, firstSnapshot, Order.AFTER_ALL.getOrdering()-1, timeStepsBetweenSnapshots);
+			model.runAtEnd(() -> onEvent(Processes.End)); // Waits for snapshots still being written, then releases the columnar files and commits the output database. Run by the End event of the model, so that it happens before the engine is stopped.
 
 		log.debug("Collector schedule created");
 	}
@@ -122,22 +207,29 @@ public class NCDESimCollector extends AbstractSimulationCollectorManager impleme
 		DumpStatistics,
 		CalculateStatistics,
 		RecordStatistics,
+		End,
 	}
 
 	public void onEvent(Enum<?> type) {
 		switch ((Processes) type) {
 
 			case DumpIndividuals:
+				model.synchronisePersonState();
 				exportIndividuals.export();
+				if (databaseIndividuals != null) exportToOutputDatabase(databaseIndividuals, model.getIndividuals());
+				if (columnarIndividuals != null) exportColumnar(columnarIndividuals, model.getIndividuals());
 				break;
 
 			case DumpFirms:
 				exportFirmsTypeA.export();
+				if (databaseFirms != null) exportToOutputDatabase(databaseFirms, model.getFirms());
+				if (columnarFirms != null) exportColumnar(columnarFirms, model.getFirms());
 				break;
 
 			case DumpStatistics:
 				try {
 					exportStatistics.export();
+					if (databaseStatistics != null) exportToOutputDatabase(databaseStatistics, List.of(statistics));
 				} catch (Exception e) {
 					log.error(e.getMessage());
 				}
@@ -150,6 +242,11 @@ public class NCDESimCollector extends AbstractSimulationCollectorManager impleme
 			case RecordStatistics:
 				recordStatistics();
 				break;
+
+			case End:
+				closeColumnarExport();
+				closeDatabaseExport();
+				break;
 		}
 
 
@@ -162,111 +259,105 @@ public class NCDESimCollector extends AbstractSimulationCollectorManager impleme
 
 	/**
 	calculateStatistics() calculates values of more complicated aggregate statistics which cannot be obtained from other classes directly. They are then recorded in the .csv file through recordStatistics() and exportStatistics
+	All statistics are calculated in one pass over individuals and one pass over firms.
 	 */
 	private void calculateStatistics() {
 
-		// Employment rate
-		employedCS = new CrossSection.Integer(model.getIndividuals(), Person.IntegerVariables.IsEmployed);
-		outcome_employmentRate = calculateRateIntCS(employedCS);
-
-		// Job changing rate
-		jobChangingCS = new CrossSection.Integer(model.getIndividuals(), Person.IntegerVariables.ChangedJobs);
-		outcome_jobChangingRate = calculateRateIntCS(jobChangingCS);
-
-		/*
-		For distributional statistics below, this method prepares cross-sections with data. Statistics are calculated and stored in a single step in recordStatistics() method.
-		 */
-
-		// Individual age distribution
-		personAgeCS = new CrossSection.Double(model.getIndividuals(), Person.DoubleVariables.Age);
-
-		// Individual health distribution
-		personHealthCS = new CrossSection.Double(model.getIndividuals(), Person.DoubleVariables.Health);
-
-		// Individual productivity distribution
-		personProductivityCS = new CrossSection.Double(model.getIndividuals(), Person.DoubleVariables.Productivity);
-
-		// Individual utility distribution
-		personUtilityCS = new CrossSection.Double(model.getIndividuals(), Person.DoubleVariables.Utility);
-
-		// Individual job amenity distribution
-		personAmenitiesCS = new CrossSection.Double(model.getIndividuals(), Person.DoubleVariables.Amenities);
-
-		// Individual wage distribution
-		personWageCS = new CrossSection.Double(model.getIndividuals(), Person.DoubleVariables.Wage);
-
-		// Firm age distribution
-		firmAgeCS = new CrossSection.Double(model.getFirms(), AbstractFirm.Variables.Age);
-
-		// Firm jobs posted distribution
-		firmJobsPostedCS = new CrossSection.Double(model.getFirms(), AbstractFirm.Variables.JobsPosted);
-
-		// Firm profit distribution
-		firmProfitCS = new CrossSection.Double(model.getFirms(), AbstractFirm.Variables.Profit);
-
-		// Firm size distribution
-		firmSizeCS = new CrossSection.Double(model.getFirms(), AbstractFirm.Variables.Size);
-
-	}
+		personAgeStats.reset();
+		personHealthStats.reset();
+		personProductivityStats.reset();
+		personUtilityStats.reset();
+		personAmenitiesStats.reset();
+		personWageStats.reset();
+		int numberOfPersons = 0, numberEmployed = 0, numberChangedJobs = 0;
+		for (Person person : model.getIndividuals()) {
+			numberOfPersons++;
+			numberEmployed += person.getIntValue(Person.IntegerVariables.IsEmployed);
+			numberChangedJobs += person.getIntValue(Person.IntegerVariables.ChangedJobs);
+			personAgeStats.add(person.getDoubleValue(Person.DoubleVariables.Age));
+			personHealthStats.add(person.getDoubleValue(Person.DoubleVariables.Health));
+			personProductivityStats.add(person.getDoubleValue(Person.DoubleVariables.Productivity));
+			personUtilityStats.add(person.getDoubleValue(Person.DoubleVariables.Utility));
+			personAmenitiesStats.add(person.getDoubleValue(Person.DoubleVariables.Amenities));
+			personWageStats.add(person.getDoubleValue(Person.DoubleVariables.Wage));
+		}
+		outcome_employmentRate = (double) numberEmployed / numberOfPersons; // Employment rate
+		outcome_jobChangingRate = (double) numberChangedJobs / numberOfPersons; // Job changing rate
+
+		firmAgeStats.reset();
+		firmJobsPostedStats.reset();
+		firmProfitStats.reset();
+		firmSizeStats.reset();
+		for (AbstractFirm firm : model.getFirms()) {
+			firmAgeStats.add(firm.getDoubleValue(AbstractFirm.Variables.Age));
+			firmJobsPostedStats.add(firm.getDoubleValue(AbstractFirm.Variables.JobsPosted));
+			firmProfitStats.add(firm.getDoubleValue(AbstractFirm.Variables.Profit));
+			firmSizeStats.add(firm.getDoubleValue(AbstractFirm.Variables.Size));
+		}
 
-	/**
-	 * Calculates the statistics for the given CrossSection object and prefix.
-	 *
-	 * @param cs     the CrossSection object for which statistics are to be calculated
-	 * @param prefix the prefix to use for the outcome variables
-	 * @return a map of the calculated statistics, with keys being the variable names and values being the corresponding statistics
-	 */
-	private HashMap<String, Double> calculateDistributionalStats(CrossSection.Double cs, String prefix) {
-		cs.updateSource();
-		DescriptiveStatistics ds = new DescriptiveStatistics(cs.getDoubleArray());
-		HashMap<String, Double> stats = new HashMap<>();
-		stats.put(prefix + "_mean", ds.getMean());
-		stats.put(prefix + "_median", ds.getPercentile(50));
-		stats.put(prefix + "_min", ds.getMin());
-		stats.put(prefix + "_max", ds.getMax());
-		stats.put(prefix + "_sd", ds.getStandardDeviation());
-		stats.put(prefix + "_kurtosis", ds.getKurtosis());
-		stats.put(prefix + "_skewness", ds.getSkewness());
-		return stats;
 	}
 
 	/**
-	 * Sets the given statistics object with the calculated statistics for the given CrossSection object and prefix.
-	 *
-	 * @param statistics the statistics object to set with calculated statistics
-	 * @param cs         the CrossSection object for which statistics are to be calculated
-	 * @param prefix     the prefix to use for the outcome variables in the statistics object
+	exportColumnar() copies the variables of the agents into a buffer on the simulation thread, then writes the buffer either on the background thread of exportPipeline or, if asynchronousExport is false, immediately.
+	Columnar export stops at the first failure to write a snapshot, as later snapshots would leave gaps in the files.
 	 */
-	private void setDistributionalStats(SimulationStatistics statistics, CrossSection.Double cs, String prefix) {
-		HashMap<String, Double> stats = calculateDistributionalStats(cs, prefix.toLowerCase());
-		for (Map.Entry<String, Double> entry : stats.entrySet()) {
-			try {
-				Method[] methods = statistics.getClass().getMethods();
-				for (Method method : methods) {
-					if (method.getName().equalsIgnoreCase("set" + entry.getKey())) {
-						method.invoke(statistics, entry.getValue());
-						break;
-					}
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
+	private <T extends IDoubleSource> void exportColumnar(ColumnarSnapshotWriter<T> writer, Collection<? extends T> agents) {
+		ColumnarSnapshotWriter.Chunk chunk = null;
+		try {
+			if (exportPipeline != null) exportPipeline.checkFailure(); // Before capturing, so that no buffer is taken for a snapshot which cannot be written
+			chunk = writer.capture(model.getTime(), agents); // Waits if both buffers of the writer are still queued
+			if (exportPipeline != null) {
+				ColumnarSnapshotWriter.Chunk captured = chunk;
+				exportPipeline.submit(() -> writer.write(captured));
+			} else {
+				writer.write(chunk);
 			}
+		} catch (IOException e) {
+			if (chunk != null && exportPipeline != null) writer.discard(chunk); // The snapshot was not queued, so its buffer is released here
+			log.error("Columnar export stopped: " + e.getMessage());
+			closeColumnarExport();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
+	// Writes the snapshots still queued and closes the columnar files. Columnar export is not resumed afterwards.
+	private void closeColumnarExport() {
+		try {
+			if (exportPipeline != null) exportPipeline.close(); // Writes the snapshots still queued
+		} catch (IOException e) {
+			log.error(e.getMessage());
+		}
+		try {
+			if (columnarIndividuals != null) columnarIndividuals.close();
+			if (columnarFirms != null) columnarFirms.close();
+		} catch (IOException e) {
+			log.error(e.getMessage());
+		}
+		exportPipeline = null;
+		columnarIndividuals = null;
+		columnarFirms = null;
+	}
 
-	/**
-	 * This method calculates a rate (e.g. rate of employment) on the provided Integer Cross-section of data
-	 * @param crossSectionOfData
-	 * @return
-	 */
-	private double calculateRateIntCS(CrossSection.Integer crossSectionOfData) {
-		crossSectionOfData.updateSource();
-		MeanArrayFunction MAFonCS = new MeanArrayFunction(crossSectionOfData);
-		MAFonCS.applyFunction();
-		return MAFonCS.getDoubleValue(IDoubleSource.Variables.Default);
+	private <T> void exportToOutputDatabase(JdbcSnapshotWriter<T> writer, Collection<? extends T> agents) {
+		try {
+			writer.export(model.getTime(), agents);
+		} catch (SQLException e) {
+			log.error(e.getMessage());
+		}
 	}
 
+	// Commits the snapshots not yet committed and creates the deferred indexes
+	private void closeDatabaseExport() {
+		if (databaseConnection == null) return;
+		try (Connection connection = databaseConnection) {
+			databaseIndividuals.close();
+			databaseFirms.close();
+			databaseStatistics.close();
+		} catch (SQLException e) {
+			log.error(e.getMessage());
+		}
+	}
 
 	/**
 	recordStatistics() sets values of fields defined in SimulationStatistics class. These are then output to Statistics Excel file.
@@ -306,34 +397,34 @@ public class NCDESimCollector extends AbstractSimulationCollectorManager impleme
 		statistics.setOutcome_jobChangingRate(outcome_jobChangingRate); // Job changing rate is calculated by the collector, similarly to employment rate
 
 		// About distribution of individual age
-		setDistributionalStats(statistics, personAgeCS, "outcome_person_age");
+		personAgeSetters.set(statistics, personAgeStats);
 
 		// About distribution of individual health
-		setDistributionalStats(statistics, personHealthCS, "outcome_person_health");
+		personHealthSetters.set(statistics, personHealthStats);
 
 		// About distribution of individual productivity
-		setDistributionalStats(statistics, personProductivityCS, "outcome_person_productivity");
+		personProductivitySetters.set(statistics, personProductivityStats);
 
 		// About distribution of individual utility
-		setDistributionalStats(statistics, personUtilityCS, "outcome_person_utility");
+		personUtilitySetters.set(statistics, personUtilityStats);
 
 		// About distribution of individual job amenities
-		setDistributionalStats(statistics, personAmenitiesCS, "outcome_person_amenities");
+		personAmenitiesSetters.set(statistics, personAmenitiesStats);
 
 		// About distribution of individual wage
-		setDistributionalStats(statistics, personWageCS, "outcome_person_wage");
+		personWageSetters.set(statistics, personWageStats);
 
 		// About distribution of firm age
-		setDistributionalStats(statistics, firmAgeCS, "outcome_firm_age");
+		firmAgeSetters.set(statistics, firmAgeStats);
 
 		// About distribution of number of jobs posted by firms
-		setDistributionalStats(statistics, firmJobsPostedCS, "outcome_firm_jobs_posted");
+		firmJobsPostedSetters.set(statistics, firmJobsPostedStats);
 
 		// About distribution of firm profit
-		setDistributionalStats(statistics, firmProfitCS, "outcome_firm_profit");
+		firmProfitSetters.set(statistics, firmProfitStats);
 
 		// About distribution of firm size
-		setDistributionalStats(statistics, firmSizeCS, "outcome_firm_size");
+		firmSizeSetters.set(statistics, firmSizeStats);
 	}
 
 
@@ -4,6 +4,7 @@ import microsim.engine.SimulationEngine;
 import microsim.engine.MultiRun;
 import microsim.gui.shell.MultiRunFrame;
 
+import NCDESim.model.ModelCheckpoint;
 import NCDESim.model.NCDESimModel;
 
 public class NCDESimMultiRun extends MultiRun {
@@ -31,6 +32,8 @@ public class NCDESimMultiRun extends MultiRun {
 	private boolean amenityCostFloorAtZero = false;
 	private boolean destroyJobs = false;
 	private boolean cloneWithNoise = true;
+	private double healthShockProbability = 0.;
+	private static Double endTime = 100.;	// End time of each run, including the burn-in of warm start runs
 
 	// Define maximum values for the experiment (used in the last simulation)
 	private static Integer numberOfRepeatedRuns = 1;		//Set default number of repeated runs
@@ -42,6 +45,16 @@ public class NCDESimMultiRun extends MultiRun {
 	//private static final Integer maxNumberOfRuns = (int) (numberOfRepeatedRuns * Math.log10(maxNumberOfAgents));
 	private static final Integer maxNumberOfRuns = Integer.MAX_VALUE;
 
+	// Warm start: if warmStartYears is positive, the model is first simulated for warmStartYears years (burn-in), with the
+	// initial values of the parameters. Each run of the sweep over the combinations of parameters (see nextModel()) then
+	// starts from the state at the end of the burn-in, instead of creating agents and simulating the burn-in again. The
+	// number of persons only sets the initial population, so only combinations with the number of persons of the burn-in
+	// are run, once each.
+	private static Integer warmStartYears = 0;
+	private NCDESimModel burnInModel; // Model of the burn-in run, until it ends
+	private ModelCheckpoint burnInState; // State at the end of the burn-in, restored by each run of the sweep
+	private int warmStartCombinationNumber = 0;
+
 	private int parameterCombinationNumber = 0; // Counter to retrieve combinations of parameters
 	static double[][] combinations = new double[24576][14];
 
@@ -80,7 +93,7 @@ public class NCDESimMultiRun extends MultiRun {
 		model.setInitialNumberOfPersons(numberOfPersons);
 		model.setShareOfNewFirmsCloned(shareOfNewFirmsCloned);
 		model.setHealthDecay(healthDecay);
-		model.setEndTime(100.);
+		model.setEndTime(endTime);
 		model.setAmenityUnitCost(amenityUnitCost);
 		model.setLambda(lambda);
 		model.setPersonMaximumAge((int) personRemovalAge);
@@ -92,6 +105,18 @@ public class NCDESimMultiRun extends MultiRun {
 		model.setAmenityCostFloorAtZero(amenityCostFloorAtZero);
 		model.setDestroyJobs(destroyJobs);
 		model.setCloneWithNoise(cloneWithNoise);
+		model.setHealthShockProbability(healthShockProbability);
+
+		if (warmStartYears > 0) {
+			if (warmStartYears >= endTime) throw new IllegalArgumentException("Number of years of burn-in (" + warmStartYears + ") must be smaller than the end time of the runs (" + endTime + ")");
+			if (burnInState == null) { // The first run simulates the burn-in and keeps its final state
+				model.setEndTime(warmStartYears.doubleValue());
+				model.setCaptureFinalState(true);
+				burnInModel = model;
+			} else {
+				model.setWarmStart(burnInState); // Runs continue from the end of the burn-in until the end time
+			}
+		}
 
 	}
 
@@ -106,24 +131,14 @@ public class NCDESimMultiRun extends MultiRun {
 
 	@Override
 	public boolean nextModel() {
+		if (warmStartYears > 0) return nextWarmStartModel();
+
 		// Update the values of the parameters for the next experiment
 		counter++;
 		// Increase the number of persons and reset parameters and counter
 		if(counter > numberOfRepeatedRuns) {
 			numberOfPersons = (int) combinations[parameterCombinationNumber][0];			// Increase the number of agents
-			shareOfNewFirmsCloned = combinations[parameterCombinationNumber][1];	// Increase the share of cloned firms among new entrants
-			healthDecay = combinations[parameterCombinationNumber][2]; // Increase the health decay parameter
-			amenityUnitCost = combinations[parameterCombinationNumber][3];
-			lambda = combinations[parameterCombinationNumber][4];
-			personRemovalAge = combinations[parameterCombinationNumber][5];
-			firmMinimumProfit = combinations[parameterCombinationNumber][6];
-			firmMinimumSize = combinations[parameterCombinationNumber][7];
-			cobbDouglasUtilityAlpha = combinations[parameterCombinationNumber][8];
-			noiseAmount = combinations[parameterCombinationNumber][9];
-			zeroHealthDeath = combinations[parameterCombinationNumber][10] == 1.;
-			amenityCostFloorAtZero = combinations[parameterCombinationNumber][11] == 1.;
-			destroyJobs = combinations[parameterCombinationNumber][12] == 1.;
-			cloneWithNoise = combinations[parameterCombinationNumber][13] == 1.;
+			setParameters(combinations[parameterCombinationNumber]);
 
 			counter = 1L;					// Reset counter
 			parameterCombinationNumber++;
@@ -136,6 +151,43 @@ public class NCDESimMultiRun extends MultiRun {
 		return parameterCombinationNumber < combinations.length;
 	}
 
+	/*
+	This method sets the parameters of a combination, other than the number of persons
+	 */
+	private void setParameters(double[] combination) {
+		shareOfNewFirmsCloned = combination[1];	// Increase the share of cloned firms among new entrants
+		healthDecay = combination[2]; // Increase the health decay parameter
+		amenityUnitCost = combination[3];
+		lambda = combination[4];
+		personRemovalAge = combination[5];
+		firmMinimumProfit = combination[6];
+		firmMinimumSize = combination[7];
+		cobbDouglasUtilityAlpha = combination[8];
+		noiseAmount = combination[9];
+		zeroHealthDeath = combination[10] == 1.;
+		amenityCostFloorAtZero = combination[11] == 1.;
+		destroyJobs = combination[12] == 1.;
+		cloneWithNoise = combination[13] == 1.;
+	}
+
+	/*
+	This method sets the parameters of the next combination for the next run of the sweep from the burned-in state
+	 */
+	private boolean nextWarmStartModel() {
+		if (burnInState == null) {
+			burnInState = burnInModel.getFinalState();
+			burnInModel = null;
+			if (burnInState == null) throw new IllegalStateException("The burn-in run ended before its final state was captured");
+		}
+		while (warmStartCombinationNumber < combinations.length && combinations[warmStartCombinationNumber][0] != numberOfPersons) {
+			warmStartCombinationNumber++; // Skip combinations with another initial population, which the burned-in state does not have
+		}
+		if (warmStartCombinationNumber == combinations.length) return false;
+		setParameters(combinations[warmStartCombinationNumber]);
+		warmStartCombinationNumber++;
+		return true;
+	}
+
 	/*
 	This method produces combinations of parameters to pass to the nextModel() method
 	 */
@@ -227,12 +279,37 @@ public class NCDESimMultiRun extends MultiRun {
 					}
 					i++;
 				}
+				case "-w" -> {            //Set the number of years of burn-in from which runs of the warm start sweep continue (0 = no warm start)
+
+					try {
+						warmStartYears = Integer.parseInt(args[i + 1]);
+					} catch (NumberFormatException e) {
+						System.err.println("Argument " + args[i + 1] + " must be an integer reflecting the number of years of burn-in.");
+						System.exit(1);
+					}
+					i++;
+				}
+				case "-e" -> {            //Set the end time of each run, including the burn-in of warm start runs
+
+					try {
+						endTime = Double.parseDouble(args[i + 1]);
+					} catch (NumberFormatException e) {
+						System.err.println("Argument " + args[i + 1] + " must be a number reflecting the end time of the runs.");
+						System.exit(1);
+					}
+					i++;
+				}
 				case "-g" -> {            //Toggle the MultiRun Gui on / off by passing the string '-g true' (on) or '-g false' (off) as a command line argument
 					executeWithGui = Boolean.parseBoolean(args[i + 1]);
 					i++;
 				}
 			}
 		}
+
+		if (warmStartYears >= endTime) {	// Runs of the sweep would end before the burn-in does. Checked once all arguments are read, as -w and -e can come in any order.
+			System.err.println("Number of years of burn-in (" + warmStartYears + ") must be smaller than the end time of the runs (" + endTime + ").");
+			System.exit(1);
+		}
 	}
 
 }
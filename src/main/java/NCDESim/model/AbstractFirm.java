@@ -1,17 +1,20 @@
 package NCDESim.model;
 
+import NCDESim.algorithms.CounterBasedRandom;
+import NCDESim.model.objects.EmployeeRegistry;
 import NCDESim.model.objects.Job;
 import jakarta.persistence.Transient;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
-import microsim.engine.SimulationEngine;
+import microsim.data.db.PanelEntityKey;
 import microsim.event.EventListener;
 import microsim.statistics.IDoubleSource;
 import microsim.statistics.IIntSource;
 
-import java.util.TreeSet;
+import java.util.ArrayList;
+import java.util.random.RandomGenerator;
 
 @Getter
 @Setter
@@ -21,7 +24,10 @@ public abstract class AbstractFirm extends Agent implements EventListener, IDoub
     // This class defines all variables that all types of firms have in common
 
     @Transient
-    private TreeSet<Person> employeesSet; // Set of employees of a firm
+    private EmployeeRegistry employees; // Employees of a firm
+    @Transient
+    @ToString.Exclude
+    private ArrayList<Job> jobs = new ArrayList<>(); // Jobs created by the firm, filled or vacant. Vacant jobs are posted again instead of creating new offers every year.
     private double amenity; // Level of amenities provided by firm, between <0;1>
     private double costOfAmenity; // Cost of providing amenity per employee
     private double wage; // Randomly drawn hourly wage offered by a firm
@@ -29,6 +35,12 @@ public abstract class AbstractFirm extends Agent implements EventListener, IDoub
     private int desiredSize; // Size (number of employees) that firm wants to achieve.
     private int numberOfOffersToPost; // Number of jobs offers firm posts
     private int age; // Firm age. For how many periods firm has existed.
+    @Transient
+    @ToString.Exclude
+    private double productivitySum; // Sum of productivity of employees, maintained on hire, exit and change of productivity of employees
+    @Transient
+    @ToString.Exclude
+    private double wageSum; // Sum of wages of the jobs held by employees
 
 
     // ---------------------------------------------------------------------
@@ -80,7 +92,7 @@ public abstract class AbstractFirm extends Agent implements EventListener, IDoub
             case Count -> 1.;
             case JobsPosted -> numberOfOffersToPost;
             case Profit -> profit;
-            case Size -> getEmployeesSet().size();
+            case Size -> getEmployees().size();
             case Wages -> wage;
         };
     }
@@ -91,9 +103,10 @@ public abstract class AbstractFirm extends Agent implements EventListener, IDoub
     public AbstractFirm(boolean newFirm) {
         super();
         // Define initial variables common to all types of firms
-        this.employeesSet = new TreeSet<>();
-        this.amenity = SimulationEngine.getRnd().nextDouble() * 2 - 1;
-        this.wage = SimulationEngine.getRnd().nextDouble();
+        RandomGenerator rnd = model.getRandomGenerator(model.nextFirmStreamId(), CounterBasedRandom.FIRM_CREATION);
+        this.employees = new EmployeeRegistry();
+        this.amenity = rnd.nextDouble() * 2 - 1;
+        this.wage = rnd.nextDouble();
         this.costOfAmenity = calculateCostOfAmenity();
         this.desiredSize = model.getFirmDesiredSize();
         this.age = 0;
@@ -102,7 +115,7 @@ public abstract class AbstractFirm extends Agent implements EventListener, IDoub
     // Constructor to clone firms. Note that firms' characteristics are cloned, but not relationships to employees etc.
     public AbstractFirm(AbstractFirm originalFirm) {
         super();
-        this.employeesSet = new TreeSet<>(); // originalFirm is cloned, but cannot clone the employees
+        this.employees = new EmployeeRegistry(); // originalFirm is cloned, but cannot clone the employees
         this.amenity = originalFirm.amenity;
         this.wage = originalFirm.wage;
         this.costOfAmenity = originalFirm.costOfAmenity;
@@ -113,16 +126,17 @@ public abstract class AbstractFirm extends Agent implements EventListener, IDoub
     public AbstractFirm(AbstractFirm originalFirm, boolean withNoise) {
         super();
         if (withNoise) {
-            this.amenity = originalFirm.amenity * SimulationEngine.getRnd().nextDouble(1-model.getNoiseAmount(), 1+model.getNoiseAmount());
-            this.wage = originalFirm.wage * SimulationEngine.getRnd().nextDouble(1-model.getNoiseAmount(), 1+model.getNoiseAmount());
-            this.costOfAmenity = originalFirm.costOfAmenity * SimulationEngine.getRnd().nextDouble(1-model.getNoiseAmount(), 1+model.getNoiseAmount());;
+            RandomGenerator rnd = model.getRandomGenerator(model.nextFirmStreamId(), CounterBasedRandom.FIRM_CREATION);
+            this.amenity = originalFirm.amenity * rnd.nextDouble(1-model.getNoiseAmount(), 1+model.getNoiseAmount());
+            this.wage = originalFirm.wage * rnd.nextDouble(1-model.getNoiseAmount(), 1+model.getNoiseAmount());
+            this.costOfAmenity = originalFirm.costOfAmenity * rnd.nextDouble(1-model.getNoiseAmount(), 1+model.getNoiseAmount());
         } else {
             this.amenity = originalFirm.amenity;
             this.wage = originalFirm.wage;
             this.costOfAmenity = originalFirm.costOfAmenity;
         }
         this.desiredSize = originalFirm.desiredSize;
-        this.employeesSet = new TreeSet<>(); // originalFirm is cloned, but cannot clone the employees
+        this.employees = new EmployeeRegistry(); // originalFirm is cloned, but cannot clone the employees
         this.age = 0;
     }
 
@@ -140,28 +154,49 @@ public abstract class AbstractFirm extends Agent implements EventListener, IDoub
 
     public void hireEmployee(Person employee, Job job) {
         employee.setJob(job);
-        getEmployeesSet().add(employee); // Add employee (Person) to a set of employees of a firm
+        job.setFilled(true);
+        if (getEmployees().add(employee)) { // Add employee (Person) to the employees of a firm
+            employee.setEmployerProductivity(employee.getProductivity());
+            productivitySum += employee.getEmployerProductivity();
+            wageSum += job.getWage();
+        }
     }
 
     public void removeEmployee(Person employee) {
-        getEmployeesSet().remove(employee);
+        employee.getJob().setFilled(false); // Job can be posted again
+        if (getEmployees().remove(employee)) {
+            productivitySum -= employee.getEmployerProductivity();
+            wageSum -= employee.getJob().getWage();
+            if (employees.isEmpty()) resetSums(); // Clear rounding errors accumulated in the sums
+        }
+    }
+
+    // Called by an employee whose productivity changed
+    public void changeProductivitySum(double change) {
+        productivitySum += change;
     }
 
-    public void removeAllEmployees() {
-        // Iterate through all employees instead of simply clearing the employees set because person values should be updated
-        for (Person employee : employeesSet) {
-            employee.removeJob();
+    // Releases all employees when the firm exits. Jobs of the firm are not reused after it exits, so are left as they are.
+    public void releaseAllEmployees() {
+        for (Person employee : employees) {
+            employee.setJob(Job.UNEMPLOYED);
         }
-        getEmployeesSet().clear();
+        getEmployees().clear();
+        resetSums();
     }
 
+    // Sum of (productivity - wage - unit cost of amenity) over employees, calculated in O(1) from the sums maintained on hire, exit and change of productivity.
+    // As the sums are maintained incrementally, they differ from sums recalculated over the employees by rounding errors, which accumulate with the number
+    // of changes: after k hires, exits and changes of productivity, by at most k ulps of the largest value of the sum (e.g. about 1e-8 for 1000 employees
+    // over 100 years). Errors are cleared when the last employee leaves. Profits within this tolerance of firmMinimumProfit may be classified differently.
     public double calculateProfit() {
-        double profit = 0;
         double unitCostOfAmenity = amenity * costOfAmenity; // Note that this is per employee
-        for (Person employee : employeesSet) {
-            profit += employee.getProductivity() - employee.getJob().getWage() - unitCostOfAmenity;
-        }
-        return profit;
+        return productivitySum - wageSum - employees.size() * unitCostOfAmenity;
+    }
+
+    private void resetSums() {
+        productivitySum = 0;
+        wageSum = 0;
     }
     public double calculateCostOfAmenity() {
         if (model.amenityCostFloorAtZero) {
@@ -170,15 +205,22 @@ public abstract class AbstractFirm extends Agent implements EventListener, IDoub
     }
 
     public void postJobOffers() {
-        numberOfOffersToPost = desiredSize - employeesSet.size(); // Firms post job offers to reach their desired size
-        for (int i = 0; i < numberOfOffersToPost; i++) {
+        numberOfOffersToPost = desiredSize - employees.size(); // Firms post job offers to reach their desired size
+        int numberOfOffersPosted = 0;
+        for (int i = 0; i < jobs.size() && numberOfOffersPosted < numberOfOffersToPost; i++) { // Post vacant jobs created in earlier years first
+            Job vacantJob = jobs.get(i);
+            if (!vacantJob.isFilled() && !vacantJob.isOnOffer()) {
+                model.getJobList().add(vacantJob);
+                numberOfOffersPosted++;
+            }
+        }
+        for (; numberOfOffersPosted < numberOfOffersToPost; numberOfOffersPosted++) {
             Job jobToPost = new Job(this, this.amenity, this.wage); // Create a job offer
-            model.getJobList().add(jobToPost); // Add the job offer to the list of available offers
+            jobs.add(jobToPost);
+            model.getJobList().add(jobToPost); // Add the job offer to the pool of available offers
         }
     }
 
-    public void prepareForRemoval() {
-        removeAllEmployees();
-    }
+    public abstract PanelEntityKey getKey(); // Key of the firm, defined by each type of firm
 
 }
@@ -1,5 +1,7 @@
 package NCDESim.model;
 
+import NCDESim.model.objects.Population;
+import jakarta.persistence.Transient;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
@@ -19,6 +21,8 @@ import microsim.event.EventListener;
 public abstract class Agent implements EventListener {
 
     protected NCDESimModel model;
+    @Transient
+    private int populationIndex = Population.NO_INDEX; // Index of the agent in the population storing it
 
     /*
     EventListener
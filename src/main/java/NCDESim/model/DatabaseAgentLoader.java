@@ -0,0 +1,220 @@
+package NCDESim.model;
+
+import NCDESim.model.objects.Job;
+import NCDESim.model.objects.Population;
+import microsim.data.db.PanelEntityKey;
+import org.apache.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DatabaseAgentLoader loads the initial population of persons and firms from the PERSON and FIRMTYPEA tables of the
+ * input database, reading each table once through a forward-only cursor and building the population directly, instead
+ * of materialising the table as a list of entities first.
+ * Input schema: both tables need an ID column. The PERSON table may have the columns AGE, HEALTH, HEALTH_L1,
+ * PRODUCTIVITY, PRODUCTIVITY_L1, UTILITY, FLAGCHANGEDJOBS, TESTVAR1 and TESTVAR2, which default to the values of a new
+ * person. The FIRMTYPEA table needs the columns AMENITY and WAGE, and may have COSTOFAMENITY, DESIREDSIZE and AGE; without
+ * AMENITY and WAGE (e.g. a table written by JPA or JdbcSnapshotWriter, which store no fields of AbstractFirm) it is
+ * ignored, and the model creates firms. Agents are built without random draws, so loading does not shift the random
+ * numbers of the run.
+ * The PERSON table may also have an EMPLOYER_ID column, holding the id of the firm employing the person. Firms are
+ * loaded first and indexed by id, and each person with an employer is hired by that firm as the row is read, which joins
+ * persons to firms in a single pass. Persons start unemployed, and find jobs in the first year, if the column is missing,
+ * null or 0, or if their employer was not loaded. If a table has a SIMULATION_TIME column, only the rows of the latest
+ * time are loaded.
+ */
+public class DatabaseAgentLoader {
+
+    private final static Logger log = Logger.getLogger(DatabaseAgentLoader.class);
+
+    private static final String PERSON_TABLE = "PERSON";
+    private static final String FIRM_TABLE = "FIRMTYPEA";
+    private static final int FETCH_SIZE = 10000; // Rows read from the database at once
+    private static final long NO_EMPLOYER = 0; // Ids start at 1
+
+    private final String url;
+    private Population<Person> individuals;
+    private Set<AbstractFirm> firms;
+    private int numberOfLinks;
+
+    /**
+     * @param url JDBC url of the input database, e.g. jdbc:h2:file:./input/input
+     */
+    public DatabaseAgentLoader(String url) {
+        this.url = url;
+    }
+
+    /**
+     * Loads persons and, if the input database has a FIRMTYPEA table, firms. Ids assigned to agents created later are
+     * greater than the ids loaded.
+     * @throws SQLException if the PERSON table cannot be read
+     */
+    public void load() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, "sa", "")) {
+            connection.setReadOnly(true);
+            Map<Long, AbstractFirm> firmsById = new HashMap<>();
+            firms = new LinkedHashSet<>();
+            if (hasTable(connection, FIRM_TABLE)) {
+                long start = System.nanoTime();
+                try (Statement statement = createCursor(connection); ResultSet rows = statement.executeQuery(selectLatest(connection, FIRM_TABLE))) {
+                    Columns columns = new Columns(rows.getMetaData());
+                    if (columns.has("AMENITY") && columns.has("WAGE")) {
+                        while (rows.next()) {
+                            AbstractFirm firm = readFirm(rows, columns);
+                            firmsById.put(firm.getKey().getId(), firm);
+                            firms.add(firm);
+                        }
+                    } else {
+                        log.warn("Table " + FIRM_TABLE + " has no AMENITY and WAGE columns, so firms are created instead of loaded");
+                    }
+                }
+                report(FIRM_TABLE, firms.size(), start);
+            }
+
+            long start = System.nanoTime();
+            individuals = new Population<>();
+            try (Statement statement = createCursor(connection); ResultSet rows = statement.executeQuery(selectLatest(connection, PERSON_TABLE))) {
+                Columns columns = new Columns(rows.getMetaData());
+                int numberOfMissingEmployers = 0;
+                while (rows.next()) {
+                    Person person = readPerson(rows, columns);
+                    individuals.add(person);
+                    long employerId = columns.getLong(rows, "EMPLOYER_ID", NO_EMPLOYER);
+                    if (employerId != NO_EMPLOYER) {
+                        AbstractFirm employer = firmsById.get(employerId);
+                        if (employer == null) { // Employer not loaded, e.g. if the FIRMTYPEA table has no AMENITY and WAGE columns
+                            numberOfMissingEmployers++;
+                            continue;
+                        }
+                        Job job = new Job(employer, employer.getAmenity(), employer.getWage());
+                        employer.getJobs().add(job);
+                        employer.hireEmployee(person, job);
+                        numberOfLinks++;
+                    }
+                }
+                if (numberOfMissingEmployers > 0) log.warn(numberOfMissingEmployers + " persons are employed by firms which were not loaded from " + FIRM_TABLE + ", and start unemployed");
+            }
+            report(PERSON_TABLE, individuals.size(), start);
+        }
+    }
+
+    public Population<Person> getIndividuals() {
+        return individuals;
+    }
+
+    // Firms loaded, empty if the input database has no FIRMTYPEA table
+    public Set<AbstractFirm> getFirms() {
+        return firms;
+    }
+
+    // Persons hired by a loaded firm through the EMPLOYER_ID column
+    public int getNumberOfLinks() {
+        return numberOfLinks;
+    }
+
+    private Person readPerson(ResultSet rows, Columns columns) throws SQLException {
+        long id = rows.getLong(columns.index("ID"));
+        Person person = new Person(new PanelEntityKey(id));
+        Person.reserveIdsUpTo(id);
+        person.setAge(columns.getInt(rows, "AGE", person.getAge()));
+        person.setHealth(columns.getDouble(rows, "HEALTH", person.getHealth()));
+        person.setHealth_L1(columns.getDouble(rows, "HEALTH_L1", person.getHealth()));
+        person.setProductivity(columns.getDouble(rows, "PRODUCTIVITY", person.getProductivity()));
+        person.setProductivity_L1(columns.getDouble(rows, "PRODUCTIVITY_L1", person.getProductivity()));
+        person.setUtility(columns.getDouble(rows, "UTILITY", person.getUtility()));
+        person.setFlagChangedJobs(columns.getInt(rows, "FLAGCHANGEDJOBS", 0) != 0);
+        person.setTestVar1(columns.getDouble(rows, "TESTVAR1", person.getTestVar1()));
+        person.setTestVar2(columns.getDouble(rows, "TESTVAR2", person.getTestVar2()));
+        return person;
+    }
+
+    private FirmTypeA readFirm(ResultSet rows, Columns columns) throws SQLException {
+        long id = rows.getLong(columns.index("ID"));
+        FirmTypeA firm = new FirmTypeA(new PanelEntityKey(id));
+        FirmTypeA.reserveIdsUpTo(id);
+        firm.setAmenity(rows.getDouble(columns.index("AMENITY")));
+        firm.setWage(rows.getDouble(columns.index("WAGE")));
+        firm.setCostOfAmenity(columns.has("COSTOFAMENITY") ? rows.getDouble(columns.index("COSTOFAMENITY")) : firm.calculateCostOfAmenity());
+        firm.setDesiredSize(columns.getInt(rows, "DESIREDSIZE", firm.getDesiredSize()));
+        firm.setAge(columns.getInt(rows, "AGE", firm.getAge()));
+        return firm;
+    }
+
+    private static Statement createCursor(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(FETCH_SIZE);
+        return statement;
+    }
+
+    private static boolean hasTable(Connection connection, String table) throws SQLException {
+        try (ResultSet tables = connection.getMetaData().getTables(null, null, table, null)) {
+            return tables.next();
+        }
+    }
+
+    // Selects all rows, or the rows of the latest simulation time if the table has a SIMULATION_TIME column
+    private static String selectLatest(Connection connection, String table) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet column = metaData.getColumns(null, null, table, "SIMULATION_TIME")) {
+            if (!column.next()) return "SELECT * FROM " + table;
+        }
+        return "SELECT * FROM " + table + " WHERE SIMULATION_TIME = (SELECT MAX(SIMULATION_TIME) FROM " + table + ")";
+    }
+
+    private static void report(String table, int numberOfRows, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log.info(String.format("Loaded %d rows from %s in %.2f s (%.0f rows/s)", numberOfRows, table, seconds, numberOfRows / Math.max(seconds, 1e-9)));
+    }
+
+    // Positions of the columns of a result set, by upper case name, resolved once per table
+    private static class Columns {
+
+        private final Map<String, Integer> indices = new HashMap<>();
+
+        Columns(ResultSetMetaData metaData) throws SQLException {
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                indices.put(metaData.getColumnLabel(i).toUpperCase(), i);
+            }
+            if (!has("ID")) throw new SQLException("Table has no ID column");
+        }
+
+        boolean has(String column) {
+            return indices.containsKey(column);
+        }
+
+        int index(String column) {
+            return indices.get(column);
+        }
+
+        int getInt(ResultSet rows, String column, int defaultValue) throws SQLException {
+            Integer i = indices.get(column);
+            if (i == null) return defaultValue;
+            int value = rows.getInt(i);
+            return rows.wasNull() ? defaultValue : value;
+        }
+
+        long getLong(ResultSet rows, String column, long defaultValue) throws SQLException {
+            Integer i = indices.get(column);
+            if (i == null) return defaultValue;
+            long value = rows.getLong(i);
+            return rows.wasNull() ? defaultValue : value;
+        }
+
+        double getDouble(ResultSet rows, String column, double defaultValue) throws SQLException {
+            Integer i = indices.get(column);
+            if (i == null) return defaultValue;
+            double value = rows.getDouble(i);
+            return rows.wasNull() ? defaultValue : value;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package NCDESim.model;
+
+import NCDESim.algorithms.CounterBasedRandom;
+import NCDESim.model.objects.Job;
+import NCDESim.model.objects.JobPool;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DeferredAcceptanceMatching clears the labour market with the worker-proposing deferred acceptance (Gale-Shapley)
+ * algorithm, which produces a stable matching: no person and firm would both rather be matched to each other than to
+ * their current match.
+ * Each firm has as many slots as it has offers in the job pool (desiredSize less its current employees) and ranks
+ * persons by productivity, the only characteristic of a person entering its profit, breaking ties by id. Each person
+ * samples searchIntensity offers, as in random sample search whatever the jobSearchMode, and ranks the offers it would accept by utility. Persons
+ * propose to their preferred firm not yet tried; firms hold the best proposals up to their number of slots and reject
+ * the others, who propose again. Preference lists are therefore built lazily: a person only looks for its next
+ * preferred offer when rejected.
+ * State is held in arrays indexed by person and firm, and the proposals held by each firm in a heap with its worst
+ * proposal at the top. Offers are sampled in parallel if parallelUpdates is true; proposals are processed sequentially.
+ * Jobs left by persons changing jobs are put back in the job pool (unless destroyJobs is true) after the market clears.
+ */
+public class DeferredAcceptanceMatching {
+
+    private final NCDESimModel model;
+
+    // Offers, grouped by firm. The offers of firm f are in slots offerStart[f] to offerStart[f + 1] - 1.
+    private int[] firmOfSlot; // Firm of the offer in each slot of the job pool
+    private int[] offerStart;
+    private Job[] offersByFirm;
+
+    // Proposals held by each firm, in a heap stored in the slots of its offers, worst proposal first
+    private int[] held;
+    private int[] numberHeld;
+
+    // Persons searching for a job
+    private Person[] persons;
+    private double[] productivity;
+    private long[] id;
+    private int[] candidates; // Slots of the offers each person would accept, not yet proposed to. The candidates of person i start at i * maxCandidates.
+    private int[] numberOfCandidates;
+    private int maxCandidates;
+
+    public DeferredAcceptanceMatching(NCDESimModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Matches searchers to the offers in the job pool of the model.
+     * @param searchers persons searching for a job
+     */
+    public void match(List<Person> searchers) {
+        JobPool jobPool = model.getJobList();
+        if (jobPool.isEmpty() || searchers.isEmpty()) return;
+
+        groupOffersByFirm(jobPool);
+        samplePreferences(jobPool, searchers);
+
+        // Persons without a tentative match, with the first searcher at the top of the stack
+        int[] free = new int[persons.length];
+        int numberFree = 0;
+        for (int i = persons.length - 1; i >= 0; i--) {
+            if (numberOfCandidates[i] > 0) free[numberFree++] = i;
+        }
+
+        while (numberFree > 0) {
+            int person = free[--numberFree];
+            int slot = nextCandidate(jobPool, person);
+            if (slot < 0) continue; // Rejected by every offer the person would accept: remains in its current situation
+            int rejected = propose(firmOfSlot[slot], person);
+            if (rejected >= 0) free[numberFree++] = rejected; // Each person removed from the stack adds at most one, so the stack never overflows
+        }
+
+        // Persons held by each firm accept its offers. Offers were collected before the pool is modified by acceptJob().
+        for (int f = 0; f < numberHeld.length; f++) {
+            for (int j = 0; j < numberHeld[f]; j++) {
+                persons[held[offerStart[f] + j]].acceptJob(offersByFirm[offerStart[f] + j]);
+            }
+        }
+        persons = null; // Do not keep persons alive until next year
+        offersByFirm = null;
+    }
+
+    private void groupOffersByFirm(JobPool jobPool) {
+        int numberOfOffers = jobPool.size();
+        Map<AbstractFirm, Integer> firmIndex = new IdentityHashMap<>();
+        firmOfSlot = new int[numberOfOffers];
+        for (int slot = 0; slot < numberOfOffers; slot++) {
+            firmOfSlot[slot] = firmIndex.computeIfAbsent(jobPool.get(slot).getEmployer(), employer -> firmIndex.size());
+        }
+
+        int numberOfFirms = firmIndex.size();
+        offerStart = new int[numberOfFirms + 1];
+        for (int slot = 0; slot < numberOfOffers; slot++) {
+            offerStart[firmOfSlot[slot] + 1]++;
+        }
+        for (int f = 0; f < numberOfFirms; f++) {
+            offerStart[f + 1] += offerStart[f];
+        }
+        offersByFirm = new Job[numberOfOffers];
+        numberHeld = new int[numberOfFirms];
+        for (int slot = 0; slot < numberOfOffers; slot++) {
+            int f = firmOfSlot[slot];
+            offersByFirm[offerStart[f] + numberHeld[f]++] = jobPool.get(slot);
+        }
+        Arrays.fill(numberHeld, 0);
+        held = new int[numberOfOffers];
+    }
+
+    // Samples offers for each person and keeps the ones the person would accept, in the order sampled. Only reads the job pool, so can run in parallel.
+    private void samplePreferences(JobPool jobPool, List<Person> searchers) {
+        int numberOfPersons = searchers.size();
+        persons = searchers.toArray(new Person[0]);
+        productivity = new double[numberOfPersons];
+        id = new long[numberOfPersons];
+        maxCandidates = Math.max(model.getSearchIntensityEmployed(), model.getSearchIntensityUnemployed());
+        candidates = new int[numberOfPersons * maxCandidates];
+        numberOfCandidates = new int[numberOfPersons];
+
+        model.forRange(numberOfPersons, (from, to) -> {
+            int[] sampledSlots = new int[maxCandidates];
+            for (int i = from; i < to; i++) {
+                Person person = persons[i];
+                productivity[i] = person.getProductivity();
+                id[i] = person.getKey().getId();
+                int numberOfSampledJobs = jobPool.sampleSlots(person.getSearchIntensity(), model.getRandomGenerator(id[i], CounterBasedRandom.JOB_SAMPLING), sampledSlots);
+                int n = 0;
+                for (int j = 0; j < numberOfSampledJobs; j++) {
+                    if (person.isAcceptable(jobPool.get(sampledSlots[j]))) candidates[i * maxCandidates + n++] = sampledSlots[j];
+                }
+                numberOfCandidates[i] = n;
+            }
+        });
+    }
+
+    // Removes and returns the candidate offer providing the person with the highest utility, or -1 if none is left. Ties go to the offer sampled first.
+    private int nextCandidate(JobPool jobPool, int person) {
+        int n = numberOfCandidates[person];
+        if (n == 0) return -1;
+        int start = person * maxCandidates;
+        int best = 0;
+        double bestUtility = persons[person].calculateUtility(jobPool.get(candidates[start]).getWage());
+        for (int j = 1; j < n; j++) {
+            double utility = persons[person].calculateUtility(jobPool.get(candidates[start + j]).getWage());
+            if (utility > bestUtility) {
+                bestUtility = utility;
+                best = j;
+            }
+        }
+        int slot = candidates[start + best];
+        System.arraycopy(candidates, start + best + 1, candidates, start + best, n - best - 1); // Keep remaining candidates in the order sampled
+        numberOfCandidates[person] = n - 1;
+        return slot;
+    }
+
+    // Person proposes to firm f. Returns the person rejected by the firm, or -1 if the firm had a free slot.
+    private int propose(int f, int person) {
+        int base = offerStart[f];
+        int size = numberHeld[f];
+        if (size < offerStart[f + 1] - base) {
+            held[base + size] = person;
+            numberHeld[f] = size + 1;
+            siftUp(base, size);
+            return -1;
+        }
+        int worst = held[base];
+        if (!isPreferred(person, worst)) return person;
+        held[base] = person;
+        siftDown(base, size);
+        return worst;
+    }
+
+    // Returns true if firms prefer person a to person b
+    private boolean isPreferred(int a, int b) {
+        if (productivity[a] != productivity[b]) return productivity[a] > productivity[b];
+        return id[a] < id[b];
+    }
+
+    private void siftUp(int base, int i) {
+        int person = held[base + i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!isPreferred(held[base + parent], person)) break;
+            held[base + i] = held[base + parent];
+            i = parent;
+        }
+        held[base + i] = person;
+    }
+
+    private void siftDown(int base, int size) {
+        int person = held[base];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && isPreferred(held[base + child], held[base + child + 1])) child++; // Less preferred child
+            if (!isPreferred(person, held[base + child])) break;
+            held[base + i] = held[base + child];
+            i = child;
+        }
+        held[base + i] = person;
+    }
+}
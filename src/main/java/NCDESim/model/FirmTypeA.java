@@ -1,5 +1,6 @@
 package NCDESim.model;
 
+import NCDESim.model.objects.EmployeeRegistry;
 import lombok.*;
 import microsim.data.db.PanelEntityKey;
 import microsim.event.EventListener;
@@ -12,11 +13,10 @@ import jakarta.persistence.EmbeddedId;
 @Getter
 @Setter
 @ToString
-@RequiredArgsConstructor
 public class FirmTypeA extends AbstractFirm implements EventListener, IDoubleSource {
 
     @EmbeddedId
-    private PanelEntityKey key = new PanelEntityKey(idCounter++);
+    private PanelEntityKey key;
 
     @Transient
     private static long idCounter = 1;
@@ -42,21 +42,52 @@ public class FirmTypeA extends AbstractFirm implements EventListener, IDoubleSou
     // ---------------------------------------------------------------------
     // Constructors
     // ---------------------------------------------------------------------
+    // No-arg constructor, also used by JPA and reflection. Issues an id, as the other constructors which create a new firm.
+    public FirmTypeA() {
+        super();
+        this.key = new PanelEntityKey(idCounter++);
+    }
+
     public FirmTypeA(boolean newFirm) {
         super(true);
         //Extend the AbstractFirm constructor
+        this.key = new PanelEntityKey(idCounter++);
     }
 
     public FirmTypeA(AbstractFirm originalFirm) {
         super(originalFirm);
+        this.key = new PanelEntityKey(idCounter++);
     }
 
     public FirmTypeA(AbstractFirm originalFirm, boolean withNoise) {
         super(originalFirm, withNoise);
+        this.key = new PanelEntityKey(idCounter++);
+    }
+
+    // Constructor for firms restored from the input database or a checkpoint: no id is issued, no random stream is used and no random numbers are drawn. Characteristics are set by the caller.
+    public FirmTypeA(PanelEntityKey key) {
+        super();
+        this.key = key;
+        setEmployees(new EmployeeRegistry());
+        setDesiredSize(model.getFirmDesiredSize());
     }
 
     // ---------------------------------------------------------------------
     // Own methods
     // ---------------------------------------------------------------------
 
+    // Id of the next firm created, saved in checkpoints
+    static long getIdCounter() {
+        return idCounter;
+    }
+
+    static void setIdCounter(long idCounter) {
+        FirmTypeA.idCounter = idCounter;
+    }
+
+    // Ensures that firms created from now on have ids greater than the given id, e.g. after loading firms from a database
+    static void reserveIdsUpTo(long id) {
+        idCounter = Math.max(idCounter, id + 1);
+    }
+
 }
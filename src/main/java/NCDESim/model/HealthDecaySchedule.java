@@ -0,0 +1,59 @@
+package NCDESim.model;
+
+/**
+ * HealthDecaySchedule stores the normalised health decay applied to persons in Person.updateHealth(), for each age.
+ * The decay depends only on the healthDecay and personMaximumPotentialAge parameters of the model and on age, so it is
+ * calculated once for every age a person can reach, instead of every year for every person. The table is rebuilt when
+ * the parameters change.
+ */
+public class HealthDecaySchedule {
+
+    private static final double EXPONENT = -0.08; // Determines the shape of the function, see the graph / Python file graphing the health decay function
+
+    private double healthDecay;
+    private int maximumPotentialAge;
+    private double[] normalisedHealthDecayByAge; // Indexed by age
+
+    public HealthDecaySchedule(double healthDecay, int maximumPotentialAge, int maximumAge) {
+        build(healthDecay, maximumPotentialAge, maximumAge);
+    }
+
+    /**
+     * Rebuilds the table if any of the parameters differs from the values the table was built with.
+     * @param healthDecay health decay parameter of the model
+     * @param maximumPotentialAge maximum potential age, used in normalisation of the health score
+     * @param maximumAge highest age included in the table
+     */
+    public void update(double healthDecay, int maximumPotentialAge, int maximumAge) {
+        if (healthDecay != this.healthDecay || maximumPotentialAge != this.maximumPotentialAge || maximumAge >= normalisedHealthDecayByAge.length) {
+            build(healthDecay, maximumPotentialAge, maximumAge);
+        }
+    }
+
+    /**
+     * @param age age of the person
+     * @return normalised health decay at the given age. Ages outside the table are calculated directly.
+     */
+    public double getNormalisedHealthDecay(int age) {
+        if (age >= 0 && age < normalisedHealthDecayByAge.length) {
+            return normalisedHealthDecayByAge[age];
+        }
+        return calculateNormalisedHealthDecay(age);
+    }
+
+    private void build(double healthDecay, int maximumPotentialAge, int maximumAge) {
+        this.healthDecay = healthDecay;
+        this.maximumPotentialAge = maximumPotentialAge;
+        double[] table = new double[Math.max(maximumAge, maximumPotentialAge) + 1];
+        for (int age = 0; age < table.length; age++) {
+            table[age] = calculateNormalisedHealthDecay(age);
+        }
+        this.normalisedHealthDecayByAge = table;
+    }
+
+    private double calculateNormalisedHealthDecay(int age) {
+        double maximumPotentialHealthDecay = Math.pow(healthDecay, maximumPotentialAge); // Normalisation factor based on maximum possible health decay
+        double currentHealthDecay = Math.pow(healthDecay, age);
+        return Math.pow((currentHealthDecay/maximumPotentialHealthDecay), EXPONENT);
+    }
+}
@@ -0,0 +1,116 @@
+package NCDESim.model;
+
+import NCDESim.algorithms.CounterBasedRandom;
+import NCDESim.model.objects.Job;
+import NCDESim.model.objects.JobPool;
+import microsim.engine.SimulationEngine;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.random.RandomGenerator;
+
+/**
+ * JobMatchingRounds matches persons searching for a job to job offers in rounds, so that the search of different
+ * persons can run in parallel. In each round, every searcher samples offers and proposes to the best offer sampled, if
+ * it would accept it, without modifying the job pool. Each offer is then awarded to the proposer with the highest
+ * priority, given by the position of the searcher in the randomly shuffled list of searchers, and winners accept their
+ * offers. Losers search again in the next round, among the offers which remain.
+ * As in sequential search, an offer wanted by several searchers goes to the one who would have searched first, so
+ * matching in rounds reproduces sequential search statistically. Searchers still unmatched after the maximum number of
+ * rounds search sequentially, in order of priority.
+ * If agentRandomStreams is true, offers are sampled from streams keyed by person, year and round (see
+ * CounterBasedRandom), so the result does not depend on the number of threads. Otherwise they are drawn from the global
+ * generator, in order of priority; proposals are then made on a single thread, as parallelUpdates requires agent random
+ * streams.
+ */
+public class JobMatchingRounds {
+
+    private static final int NO_CLAIM = 0; // Value of claims for offers without proposals
+
+    private final NCDESimModel model;
+    private final int maxRounds;
+
+    public JobMatchingRounds(NCDESimModel model, int maxRounds) {
+        this.model = model;
+        this.maxRounds = maxRounds;
+    }
+
+    /**
+     * Matches searchers to the offers in the job pool of the model.
+     * @param searchers persons searching for a job, in order of priority (highest first)
+     */
+    public void match(List<Person> searchers) {
+        Person[] active = searchers.toArray(new Person[0]); // Searchers still looking for a job, in order of priority
+        int numberActive = active.length;
+        Job[] proposals = new Job[numberActive];
+        Person[] winners = new Person[numberActive];
+        Job[] acceptedJobs = new Job[numberActive];
+        int scratchSize = Math.max(model.getSearchIntensityEmployed(), model.getSearchIntensityUnemployed());
+
+        for (int round = 0; round < maxRounds && numberActive > 0; round++) {
+            JobPool jobPool = model.getJobList();
+            AtomicIntegerArray claims = new AtomicIntegerArray(jobPool.size()); // For each slot of the pool, 1 + position of the searcher with the highest priority proposing to the offer
+            int currentRound = round;
+            int numberProposing = numberActive;
+
+            // Proposals, in parallel: searchers only read the job pool
+            model.forRange(numberProposing, (from, to) -> {
+                int[] scratch = new int[scratchSize];
+                for (int i = from; i < to; i++) {
+                    Job proposal = propose(active[i], currentRound, scratch);
+                    proposals[i] = proposal;
+                    if (proposal != null) claims.accumulateAndGet(proposal.getSlot(), i + 1, JobMatchingRounds::highestPriority);
+                }
+            });
+
+            // Resolve conflicts before any offer is accepted, as accepting offers changes the slots of the pool
+            int numberWinners = 0;
+            numberActive = 0;
+            for (int i = 0; i < numberProposing; i++) {
+                Job proposal = proposals[i];
+                if (proposal == null) continue; // No acceptable offer sampled: search ends, as in sequential search
+                if (claims.get(proposal.getSlot()) == i + 1) {
+                    winners[numberWinners] = active[i];
+                    acceptedJobs[numberWinners++] = proposal;
+                } else {
+                    active[numberActive++] = active[i]; // Loser searches again in the next round. numberActive <= i, so active can be compacted in place.
+                }
+            }
+
+            // Acceptance, sequential as it modifies the job pool and the firms
+            for (int i = 0; i < numberWinners; i++) {
+                winners[i].acceptJob(acceptedJobs[i]);
+            }
+        }
+
+        for (int i = 0; i < numberActive; i++) {
+            active[i].searchForJob(); // Searchers still unmatched search one at a time
+        }
+    }
+
+    // Offer the person proposes to, or null if the person would not accept any of the offers sampled
+    private Job propose(Person person, int round, int[] scratch) {
+        JobPool jobPool = model.getJobList();
+        int searchIntensity = person.getSearchIntensity();
+        Job offer = switch (model.getJobSearchMode()) {
+            case RandomSample -> {
+                int numberOfSampledJobs = jobPool.sampleSlots(searchIntensity, randomGenerator(person, round), scratch);
+                yield (numberOfSampledJobs > 0) ? person.findSampledJobWithHighestUtility(jobPool, scratch, numberOfSampledJobs) : null;
+            }
+            case TopOfBook -> jobPool.getJobBook().bestOfRandomSample(searchIntensity, randomGenerator(person, round), scratch);
+            case FullInformation -> jobPool.getJobBook().best();
+        };
+        return (offer != null && person.isAcceptable(offer)) ? offer : null;
+    }
+
+    private RandomGenerator randomGenerator(Person person, int round) {
+        if (model.isAgentRandomStreams()) {
+            return CounterBasedRandom.stream(model.getRandomStreamSeed(), model.getTime(), person.getKey().getId(), CounterBasedRandom.JOB_SAMPLING, round);
+        }
+        return SimulationEngine.getRnd();
+    }
+
+    private static int highestPriority(int claim, int proposer) {
+        return (claim == NO_CLAIM) ? proposer : Math.min(claim, proposer);
+    }
+}
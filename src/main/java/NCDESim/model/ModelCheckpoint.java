@@ -0,0 +1,316 @@
+package NCDESim.model;
+
+import NCDESim.algorithms.RandomState;
+import NCDESim.model.objects.Job;
+import NCDESim.model.objects.JobBook;
+import NCDESim.model.objects.JobPool;
+import NCDESim.model.objects.Population;
+import microsim.data.db.PanelEntityKey;
+import microsim.engine.SimulationEngine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * ModelCheckpoint saves the complete state of the model at the end of a year, so that a run can be resumed from the
+ * checkpoint and continue exactly as it would have without interruption: persons, firms and the jobs of each firm,
+ * employment links and the order of employees, the job pool, the counters of the model, the id counters of Person and
+ * FirmTypeA, and the state of the global random number generator. Agents are saved in the order in which they are
+ * iterated over, and sums maintained incrementally (e.g. productivity sums of firms) are saved rather than recalculated,
+ * so that floating-point results are identical.
+ * Saving takes two steps: capture() encodes the state in a byte array on the simulation thread, and write() compresses
+ * and writes it, which can run on another thread (see AsyncExportPipeline). The file is written under a temporary name
+ * and then renamed, so a checkpoint file is always complete.
+ * A checkpoint can also be kept in memory and restored several times, to fork runs from the same state (e.g. runs of a
+ * parameter sweep starting from a burned-in state, see NCDESimMultiRun).
+ * Derived state (health decay schedule, utility function, structure of arrays, matching engines) is rebuilt by the model
+ * from its parameters, which must be the same as in the run checkpointed.
+ *
+ * File layout (big-endian): MAGIC, VERSION, year, then the state compressed with Deflater.
+ */
+public class ModelCheckpoint {
+
+    public static final long MAGIC = 0x4E43444543505431L; // "NCDECPT1"
+    private static final int VERSION = 1;
+    private static final int NONE = -1; // Index of a missing firm or job
+    private static final long NO_JOB_BOOK = -1;
+
+    private final int time;
+    private final byte[] state; // Encoded state, uncompressed
+
+    // Persons and firms restored by restoreAgents(), in the order in which they were saved
+    private List<Person> individuals;
+    private List<AbstractFirm> firms;
+    private DataInputStream in; // Remaining state, read by restoreState()
+
+    private ModelCheckpoint(int time, byte[] state) {
+        this.time = time;
+        this.state = state;
+    }
+
+    public int getTime() {
+        return time;
+    }
+
+    /**
+     * Encodes the state of the model. Must be called on the simulation thread, between events.
+     * @param model model to save
+     * @return checkpoint, which no longer refers to the model
+     */
+    public static ModelCheckpoint capture(NCDESimModel model) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            List<AbstractFirm> firms = new ArrayList<>(model.getFirms());
+            Map<AbstractFirm, Integer> firmIndices = new HashMap<>(firms.size() * 2);
+            Map<Job, Integer> jobIndices = new HashMap<>(); // Position of each job in the list of jobs of its employer
+            out.writeInt(firms.size());
+            for (AbstractFirm firm : firms) {
+                firmIndices.put(firm, firmIndices.size());
+                out.writeLong(firm.getKey().getId());
+                out.writeDouble(firm.getAmenity());
+                out.writeDouble(firm.getCostOfAmenity());
+                out.writeDouble(firm.getWage());
+                out.writeDouble(firm.getProfit());
+                out.writeInt(firm.getDesiredSize());
+                out.writeInt(firm.getNumberOfOffersToPost());
+                out.writeInt(firm.getAge());
+                out.writeDouble(firm.getProductivitySum());
+                out.writeDouble(firm.getWageSum());
+                List<Job> jobs = firm.getJobs();
+                out.writeInt(jobs.size());
+                for (int j = 0; j < jobs.size(); j++) {
+                    jobIndices.put(jobs.get(j), j);
+                    writeJob(out, jobs.get(j));
+                }
+            }
+
+            Population<Person> individuals = model.getIndividuals();
+            Map<Person, Integer> personIndices = new HashMap<>(individuals.size() * 2);
+            out.writeInt(individuals.size());
+            for (Person person : individuals) {
+                personIndices.put(person, personIndices.size());
+                out.writeLong(person.getKey().getId());
+                out.writeInt(person.getAge());
+                out.writeDouble(person.getHealth());
+                out.writeDouble(person.getHealth_L1());
+                out.writeDouble(person.getProductivity());
+                out.writeDouble(person.getProductivity_L1());
+                out.writeDouble(person.getUtility());
+                out.writeBoolean(person.isFlagChangedJobs());
+                out.writeDouble(person.getTestVar1());
+                out.writeDouble(person.getTestVar2());
+                out.writeDouble(person.getEmployerProductivity());
+                Job job = person.getJob();
+                Integer employer = (job.getEmployer() != null) ? firmIndices.get(job.getEmployer()) : null;
+                out.writeInt((employer != null) ? employer : NONE);
+                if (employer != null) {
+                    Integer jobIndex = jobIndices.get(job);
+                    out.writeInt((jobIndex != null) ? jobIndex : NONE);
+                    if (jobIndex == null) writeJob(out, job); // Held jobs are normally in the list of jobs of the employer
+                }
+            }
+
+            for (AbstractFirm firm : firms) { // Employees in the order of the registry of each firm
+                out.writeInt(firm.getEmployees().size());
+                for (Person employee : firm.getEmployees()) {
+                    out.writeInt(personIndices.get(employee));
+                }
+            }
+
+            JobPool jobPool = model.getJobList();
+            List<Job> offers = new ArrayList<>(jobPool.size()); // Offers of firms which exited stay in the pool until it is cleared at the start of the next year, and are not saved
+            for (Job job : jobPool) { // In the order of the slots of the pool
+                if (firmIndices.containsKey(job.getEmployer())) offers.add(job);
+            }
+            out.writeInt(offers.size());
+            for (Job job : offers) {
+                out.writeInt(firmIndices.get(job.getEmployer()));
+                out.writeInt(jobIndices.get(job));
+            }
+            out.writeLong((jobPool.getJobBook() != null) ? jobPool.getJobBook().getNextSequence() : NO_JOB_BOOK);
+
+            out.writeInt(model.getTime());
+            out.writeDouble(model.getHealthShockRandomDraw());
+            out.writeLong(model.getRandomStreamSeed());
+            out.writeLong(model.getFirmStreamIdCounter());
+            out.writeInt(model.getNumberOfFirmsCreated());
+            out.writeInt(model.getNumberOfFirmsDestroyed());
+            out.writeInt(model.getNumberOfFirmsDestroyedBecauseOfProfits());
+            out.writeInt(model.getNumberOfFirmsDestroyedBecauseOfSize());
+            out.writeLong(Person.getIdCounter());
+            out.writeLong(FirmTypeA.getIdCounter());
+            out.writeLong(RandomState.getState(SimulationEngine.getRnd()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode the state of the model", e); // Not expected, as the state is written to memory
+        }
+        return new ModelCheckpoint(model.getTime(), bytes.toByteArray());
+    }
+
+    /**
+     * Compresses the checkpoint and writes it to a file. Can be called on any thread.
+     * @param path file to write. An existing file is replaced once the checkpoint has been written.
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeLong(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(time);
+                out.flush();
+                DeflaterOutputStream compressed = new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED), 1 << 16);
+                compressed.write(state);
+                compressed.finish();
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary); // No partial file is left behind
+            throw e;
+        }
+    }
+
+    /**
+     * @param path file written by write()
+     * @return checkpoint, to be restored with restoreAgents() and restoreState()
+     * @throws IOException if the file cannot be read or is not a checkpoint
+     */
+    public static ModelCheckpoint read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readLong() != MAGIC) throw new IOException(path + " is not a checkpoint file");
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException(path + " has version " + version + ", but version " + VERSION + " is expected");
+            int time = in.readInt();
+            InputStream decompressed = new InflaterInputStream(in);
+            return new ModelCheckpoint(time, decompressed.readAllBytes());
+        }
+    }
+
+    /**
+     * Creates the persons and firms saved, with their jobs and employment links, and sets them as the individuals and
+     * firms of the model. Called in place of the creation of agents, before auxiliary objects are created.
+     * @param model model to restore
+     * @throws IOException if the checkpoint is corrupt
+     */
+    public void restoreAgents(NCDESimModel model) throws IOException {
+        in = new DataInputStream(new ByteArrayInputStream(state));
+        int numberOfFirms = in.readInt();
+        firms = new ArrayList<>(numberOfFirms);
+        for (int f = 0; f < numberOfFirms; f++) {
+            FirmTypeA firm = new FirmTypeA(new PanelEntityKey(in.readLong()));
+            firm.setAmenity(in.readDouble());
+            firm.setCostOfAmenity(in.readDouble());
+            firm.setWage(in.readDouble());
+            firm.setProfit(in.readDouble());
+            firm.setDesiredSize(in.readInt());
+            firm.setNumberOfOffersToPost(in.readInt());
+            firm.setAge(in.readInt());
+            firm.setProductivitySum(in.readDouble());
+            firm.setWageSum(in.readDouble());
+            int numberOfJobs = in.readInt();
+            for (int j = 0; j < numberOfJobs; j++) {
+                firm.getJobs().add(readJob(in, firm));
+            }
+            firms.add(firm);
+        }
+
+        int numberOfPersons = in.readInt();
+        individuals = new ArrayList<>(numberOfPersons);
+        for (int p = 0; p < numberOfPersons; p++) {
+            Person person = new Person(new PanelEntityKey(in.readLong()));
+            person.setAge(in.readInt());
+            person.setHealth(in.readDouble());
+            person.setHealth_L1(in.readDouble());
+            person.setProductivity(in.readDouble());
+            person.setProductivity_L1(in.readDouble());
+            person.setUtility(in.readDouble());
+            person.setFlagChangedJobs(in.readBoolean());
+            person.setTestVar1(in.readDouble());
+            person.setTestVar2(in.readDouble());
+            person.setEmployerProductivity(in.readDouble());
+            int employer = in.readInt();
+            if (employer != NONE) {
+                AbstractFirm firm = firms.get(employer);
+                int jobIndex = in.readInt();
+                person.setJob((jobIndex != NONE) ? firm.getJobs().get(jobIndex) : readJob(in, firm));
+            }
+            individuals.add(person);
+        }
+
+        for (AbstractFirm firm : firms) { // Registered directly, as the productivity and wage sums of firms are restored as saved
+            int numberOfEmployees = in.readInt();
+            for (int e = 0; e < numberOfEmployees; e++) {
+                firm.getEmployees().add(individuals.get(in.readInt()));
+            }
+        }
+
+        model.setIndividuals(new Population<>(individuals));
+        model.setFirms(new LinkedHashSet<>(firms));
+    }
+
+    /**
+     * Restores the job pool, the counters of the model and of agents, and the state of the global random number
+     * generator. Called after restoreAgents(), once auxiliary objects have been created.
+     * @param model model to restore
+     * @throws IOException if the checkpoint is corrupt
+     */
+    public void restoreState(NCDESimModel model) throws IOException {
+        if (in == null) throw new IllegalStateException("Agents must be restored before the state of the model");
+        JobPool jobPool = model.getJobList();
+        int numberOfOffers = in.readInt();
+        for (int s = 0; s < numberOfOffers; s++) {
+            AbstractFirm firm = firms.get(in.readInt());
+            jobPool.add(firm.getJobs().get(in.readInt()));
+        }
+        long nextSequence = in.readLong();
+        JobBook jobBook = jobPool.getJobBook();
+        if (jobBook != null && nextSequence != NO_JOB_BOOK) jobBook.setNextSequence(nextSequence);
+
+        model.setTime(in.readInt());
+        model.setHealthShockRandomDraw(in.readDouble());
+        model.setRandomStreamSeed(in.readLong());
+        model.setFirmStreamIdCounter(in.readLong());
+        model.setNumberOfFirmsCreated(in.readInt());
+        model.setNumberOfFirmsDestroyed(in.readInt());
+        model.setNumberOfFirmsDestroyedBecauseOfProfits(in.readInt());
+        model.setNumberOfFirmsDestroyedBecauseOfSize(in.readInt());
+        Person.setIdCounter(in.readLong());
+        FirmTypeA.setIdCounter(in.readLong());
+        RandomState.setState(SimulationEngine.getRnd(), in.readLong());
+        if (in.read() != -1) throw new IOException("Checkpoint has unexpected data after the state of the model");
+        in = null;
+        individuals = null;
+        firms = null;
+    }
+
+    private static void writeJob(DataOutputStream out, Job job) throws IOException {
+        out.writeDouble(job.getAmenity());
+        out.writeDouble(job.getWage());
+        out.writeBoolean(job.isFilled());
+        out.writeLong(job.getSequence());
+    }
+
+    private static Job readJob(DataInputStream in, AbstractFirm employer) throws IOException {
+        Job job = new Job(employer, in.readDouble(), in.readDouble());
+        job.setFilled(in.readBoolean());
+        job.setSequence(in.readLong());
+        return job;
+    }
+}
@@ -1,15 +1,27 @@
 package NCDESim.model;
 
+import NCDESim.algorithms.AliasTable;
+import NCDESim.algorithms.CounterBasedRandom;
 import NCDESim.algorithms.Helpers;
+import NCDESim.algorithms.ParallelLoops;
+import NCDESim.algorithms.RandomState;
+import NCDESim.algorithms.utility.CESUtility;
+import NCDESim.algorithms.utility.CobbDouglasUtility;
+import NCDESim.algorithms.utility.QuasiLinearUtility;
+import NCDESim.algorithms.utility.UtilityFunction;
+import NCDESim.data.enums.JobMatchingModes;
+import NCDESim.data.enums.JobSearchModes;
 import NCDESim.data.enums.UtilityFunctions;
+import NCDESim.data.export.AsyncExportPipeline;
 import NCDESim.data.filters.FirmRemovalFilter;
 import NCDESim.data.filters.IndividualCanLookForJobFilter;
 import NCDESim.data.filters.PersonRemovalFilter;
-import NCDESim.model.objects.Job;
+import NCDESim.model.objects.JobBook;
+import NCDESim.model.objects.JobPool;
+import NCDESim.model.objects.Population;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import microsim.annotation.GUIparameter;
-import microsim.data.db.DatabaseUtils;
 import microsim.engine.AbstractSimulationManager;
 import microsim.engine.SimulationEngine;
 import microsim.event.EventGroup;
@@ -21,7 +33,14 @@ import microsim.statistics.IIntSource;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.log4j.Logger;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.random.RandomGenerator;
 
 @Data
 @EqualsAndHashCode(callSuper = false)
@@ -65,6 +84,12 @@ public class NCDESimModel extends AbstractSimulationManager implements EventList
     boolean onTheJobSearch = true; // If true, currently employed individuals will also look for jobs each period
     @GUIparameter(description = "Toggle to destroy jobs left during on the job search")
     boolean destroyJobs = false;
+    @GUIparameter(description = "How persons find the job offer to consider: random sample of offers, best of a random sample by wage, or best offer available by wage")
+    JobSearchModes jobSearchMode = JobSearchModes.RandomSample;
+    @GUIparameter(description = "How job offers are matched to persons: one person at a time, all persons at once in rounds (can run in parallel), or a stable matching of persons and firms (deferred acceptance)")
+    JobMatchingModes jobMatchingMode = JobMatchingModes.Sequential;
+    @GUIparameter(description = "Maximum number of rounds of matching in rounds, after which remaining persons search one at a time")
+    Integer maxMatchingRounds = 10;
     @GUIparameter(description = "Search intensity unemployed")
     Integer searchIntensityUnemployed = 5;
     @GUIparameter(description = "Search intensity employed")
@@ -88,19 +113,51 @@ public class NCDESimModel extends AbstractSimulationManager implements EventList
     @GUIparameter(description = "Parameter Alpha for the CB Utility")
     Double cobbDouglasAlpha = 0.5;
     Double CobbDouglasUtilityBeta = 1 - cobbDouglasAlpha; // Parameter Beta for the CB Utility
+    @GUIparameter(description = "Parameter Rho for the CES Utility (non-zero). TFP and Alpha are shared with the CB Utility")
+    Double cesRho = 0.5;
     @GUIparameter(description = "Set to true to restrict the firm's cost of providing amenity from the bottom at zero. If false, firms providing negative amenity (dis-amenity) increase their profits.")
     boolean amenityCostFloorAtZero = false;
     @GUIparameter(description = "If true, individuals whose health equals zero will be removed from the simulation")
     boolean zeroHealthDeath = false;
+    @GUIparameter(description = "Toggle to store state variables of persons in primitive arrays and update them in tight loops. Faster for large populations.")
+    boolean structureOfArrays = false;
+    @GUIparameter(description = "Toggle to draw random numbers from streams keyed by year, agent and purpose, so that results do not depend on the order in which agents are processed. If false, all draws come from the global generator.")
+    boolean agentRandomStreams = false;
+    @GUIparameter(description = "Toggle to update persons and firms in parallel. Requires (and switches on) agent random streams.")
+    boolean parallelUpdates = false;
+    @GUIparameter(description = "Number of threads used when updating in parallel (0 = number of available processors)")
+    Integer numberOfThreads = 0;
+    @GUIparameter(description = "Toggle to load the initial persons and firms from the input database (input/input.h2.db) instead of creating them")
+    boolean loadInitialPopulation = false;
+    @GUIparameter(description = "Save a checkpoint of the model every given number of years, from which the run can be resumed (0 = no checkpoints)")
+    Integer checkpointInterval = 0;
+    @GUIparameter(description = "Path of a checkpoint file to resume the run from, with the same parameters as the run checkpointed (empty = start a new run)")
+    String resumeFromCheckpoint = "";
 //    @GUIparameter(description = "Amount of noise +- 1 used when creating new firms.")
     Double noiseAmount = 0.1;
 
     private int time;
     private double healthShockRandomDraw; // To determine if health shock occurs in a given period, if it is applied to every individual (controlled by healthShockHeterogeneous parameter)
-    private List<Person> individuals;
+    private Population<Person> individuals;
+    private PersonState personState; // Columns storing state variables of individuals, if structureOfArrays is true
+    private HealthDecaySchedule healthDecaySchedule; // Normalised health decay by age, used to update health of individuals
+    private UtilityFunction resolvedUtilityFunction; // Implementation of the utilityFunction selected, resolved once in buildObjects()
     private Set<AbstractFirm> firms;
-    private List<Job> jobList; //List of job offers made by firms, characterised by wage and amenity
+    private ParallelLoops parallelLoops; // Executes yearly updates of persons and firms in parallel, if parallelUpdates is true
+    private long randomStreamSeed; // Seed of the random streams of individual agents
+    private long firmStreamIdCounter; // Id of the random stream of the last firm created. Firms draw their characteristics before their key is assigned, so streams are identified by order of creation.
+    private JobMatchingRounds jobMatchingRounds; // Matches persons to job offers in rounds, if jobMatchingMode is Rounds
+    private DeferredAcceptanceMatching deferredAcceptanceMatching; // Matches persons to job offers by deferred acceptance, if jobMatchingMode is DeferredAcceptance
+    private AliasTable firmCloningSampler; // Distribution from which firms to clone were drawn in the current year
+    private JobPool jobList; //Pool of job offers made by firms, characterised by wage and amenity
     private int numberOfFirmsCreated, numberOfFirmsDestroyed, numberOfFirmsDestroyedBecauseOfProfits, numberOfFirmsDestroyedBecauseOfSize;
+    private AsyncExportPipeline checkpointPipeline; // Writes checkpoints on a background thread, if checkpointInterval is positive
+    private Path checkpointFolder;
+    private Path lastCheckpoint; // Latest checkpoint written successfully, only accessed on the writer thread of checkpointPipeline
+    private ModelCheckpoint warmStart; // State restored instead of creating agents, if set, e.g. the state at the end of a burn-in shared by the runs of a sweep
+    private boolean captureFinalState; // If true, the state at the end of the run is kept in finalState
+    private ModelCheckpoint finalState;
+    private final List<Runnable> endOfRunActions = new ArrayList<>(); // Run by the End event before the engine is stopped
 
     // ---------------------------------------------------------------------
     // Manager methods
@@ -110,43 +167,84 @@ public class NCDESimModel extends AbstractSimulationManager implements EventList
 
         if (fixRandomSeed)                                        // If fixed, the model will follow the same trajectory as other executions withe same random number seed.
             SimulationEngine.getRnd().setSeed(seedIfFixed);
+        randomStreamSeed = fixRandomSeed ? seedIfFixed : System.nanoTime();
+        if (parallelUpdates && !agentRandomStreams) {
+            agentRandomStreams = true; // Draws from the global generator depend on the order of updates, which is not fixed when updating in parallel
+            log.info("Agent random streams switched on, as required by parallel updates");
+        }
 
         checkParameters(); // Check that specified parameter values meet the conditions we impose
-        createAgents();
-//		loadAgentsFromDatabase(); //Can be used instead of createAgents() to load agents from h2 database
-
-        createAuxiliaryObjects(); // Initialize jobList
+        healthDecaySchedule = new HealthDecaySchedule(healthDecay, personMaximumPotentialAge, personMaximumAge);
+        resolvedUtilityFunction = resolveUtilityFunction();
+        ModelCheckpoint checkpoint = (warmStart != null) ? warmStart : resumeFromCheckpoint.isEmpty() ? null : readCheckpoint();
+        if (checkpoint != null) restoreCheckpoint(checkpoint, false); // Restore agents saved instead of creating them
+        else if (loadInitialPopulation) loadAgentsFromDatabase(); // Load agents from the h2 database instead of creating them
+        else createAgents();
+
+        createAuxiliaryObjects(); // Initialize jobList and, if used, the structure of arrays of individuals
+        if (checkpoint != null) restoreCheckpoint(checkpoint, true); // Restore the job pool, counters and random state, once auxiliary objects exist
+        if (checkpointInterval > 0) createCheckpointPipeline();
+        if (captureFinalState) {
+            try {
+                RandomState.getState(SimulationEngine.getRnd()); // Fail before the run rather than at its end
+            } catch (IllegalArgumentException e) {
+                throw new IllegalStateException("The state at the end of the run cannot be saved: " + e.getMessage(), e);
+            }
+        }
 
     }
 
 
     public void buildSchedule() {
 
+        EventGroup modelEvents = createYearlyEvents();
+        getEngine().getEventQueue().scheduleRepeat(modelEvents, time, 0, 1.); // From year 0, or from the year restored from a checkpoint
+        getEngine().getEventQueue().scheduleOnce(new SingleTargetEvent(this, Processes.End), endTime, Order.AFTER_ALL.getOrdering());
+
+        log.debug("Model schedule created");
+
+    }
+
+    // Events of one year, in the order in which they are run. Refers to the collections of agents of the model, so must be created again if they are replaced.
+    EventGroup createYearlyEvents() {
+
         EventGroup modelEvents = new EventGroup();
 
         modelEvents.addEvent(this, Processes.BeginNewYear); // Increment model time variable by 1
-        modelEvents.addCollectionEvent(individuals, Person.Processes.BeginNewYear); // Update values of individuals' lagged variables
+        if (structureOfArrays || parallelUpdates) {
+            modelEvents.addEvent(this, Processes.PersonsBeginNewYear);
+        } else {
+            modelEvents.addCollectionEvent(individuals, Person.Processes.BeginNewYear); // Update values of individuals' lagged variables
+        }
 
         modelEvents.addEvent(this, Processes.AddNewPersons);
         modelEvents.addEvent(this, Processes.AddNewFirms);
 
-        modelEvents.addCollectionEvent(individuals, Person.Processes.Ageing);
+        if (structureOfArrays || parallelUpdates) {
+            modelEvents.addEvent(this, Processes.PersonsAgeing);
+        } else {
+            modelEvents.addCollectionEvent(individuals, Person.Processes.Ageing);
+        }
         modelEvents.addCollectionEvent(firms, FirmTypeA.Processes.PostJobOffers);
 
         modelEvents.addEvent(this, Processes.JobSearch);
 
-        modelEvents.addCollectionEvent(individuals, Person.Processes.Update); // Update persons' state variables
-        modelEvents.addCollectionEvent(firms, FirmTypeA.Processes.Update); // Update firms' state variables
+        if (structureOfArrays || parallelUpdates) {
+            modelEvents.addEvent(this, Processes.PersonsUpdate);
+        } else {
+            modelEvents.addCollectionEvent(individuals, Person.Processes.Update); // Update persons' state variables
+        }
+        if (parallelUpdates) {
+            modelEvents.addEvent(this, Processes.FirmsUpdate);
+        } else {
+            modelEvents.addCollectionEvent(firms, FirmTypeA.Processes.Update); // Update firms' state variables
+        }
 
         modelEvents.addEvent(this, Processes.RemovePersons); // Remove persons who meet criteria specified in PersonRemovalFilter from the simulation. This should occur before firm removal, because it modifies the set of employees of a firm, and firm size = 0 is a condition for firm removal.
         modelEvents.addEvent(this, Processes.RemoveFirms); // Remove firms which meet criteria specified in FirmRemovalFilter from the simulation
-        
-
-        getEngine().getEventQueue().scheduleRepeat(modelEvents, 0., 0, 1.);
-        getEngine().getEventQueue().scheduleOnce(new SingleTargetEvent(this, Processes.End), endTime, Order.AFTER_ALL.getOrdering());
-
-        log.debug("Model schedule created");
+        if (checkpointPipeline != null) modelEvents.addEvent(this, Processes.Checkpoint); // Save the state at the end of the year, every checkpointInterval years. Not scheduled if checkpoints were switched off in buildObjects().
 
+        return modelEvents;
     }
     
 
@@ -162,7 +260,12 @@ public class NCDESimModel extends AbstractSimulationManager implements EventList
         RemoveFirms,
         RemovePersons,
         End,
-        BeginNewYear
+        BeginNewYear,
+        PersonsAgeing, // Processes of individuals run by the model when structureOfArrays or parallelUpdates is true
+        PersonsBeginNewYear,
+        PersonsUpdate,
+        FirmsUpdate, // Update of firms run by the model when parallelUpdates is true
+        Checkpoint,
     }
 
     public void onEvent(Enum<?> type) {
@@ -172,12 +275,29 @@ public class NCDESimModel extends AbstractSimulationManager implements EventList
             case JobSearch -> jobSearch();
             case RemoveFirms -> removeFirms();
             case RemovePersons -> removePersons();
-            case End -> getEngine().end();
+            case End -> {
+                if (parallelLoops != null) parallelLoops.shutdown();
+                closeCheckpointPipeline(); // Wait for the last checkpoint to be written
+                if (captureFinalState) finalState = ModelCheckpoint.capture(this);
+                endOfRunActions.forEach(Runnable::run);
+                getEngine().end();
+            }
             case BeginNewYear -> {
                 time++;
                 clearJobList();
                 numberOfFirmsCreated = 0;
-                healthShockRandomDraw = SimulationEngine.getRnd().nextDouble();
+                healthDecaySchedule.update(healthDecay, personMaximumPotentialAge, personMaximumAge); // Rebuilt only if parameters changed, e.g. in the GUI
+                healthShockRandomDraw = agentRandomStreams ? CounterBasedRandom.nextDouble(randomStreamSeed, time, CounterBasedRandom.MODEL_ID, CounterBasedRandom.GLOBAL_HEALTH_SHOCK) : SimulationEngine.getRnd().nextDouble();
+            }
+            case PersonsAgeing -> updatePersons(Person.Processes.Ageing);
+            case PersonsBeginNewYear -> updatePersons(Person.Processes.BeginNewYear);
+            case PersonsUpdate -> {
+                updatePersons(Person.Processes.Update);
+                individuals.forEach(Person::reportProductivityToEmployer); // Single thread, as employees of a firm may be updated by different threads
+            }
+            case FirmsUpdate -> updateFirms();
+            case Checkpoint -> {
+                if (time % checkpointInterval == 0) writeCheckpoint();
             }
         }
     }
@@ -230,7 +350,7 @@ public class NCDESimModel extends AbstractSimulationManager implements EventList
 		Create a collection of individuals to simulate.
 		A fixed number of individuals of each age is created to obtain cohorts.
 		 */
-        individuals = new LinkedList<>();
+        individuals = new Population<>();
         int numberOfPersonsToAddInEachAgeGroup = initialNumberOfPersons / (personMaximumAge - personMinimumAge + 1);
 
         for (int age = personMinimumAge; age <= personMaximumAge; age++) {
@@ -260,26 +380,19 @@ public class NCDESimModel extends AbstractSimulationManager implements EventList
 
         int numberOfNewClonedFirmsToAdd = (int) (flowOfFirms * shareOfNewFirmsCloned);
         int numberOfNewRandomFirmsToAdd = flowOfFirms - numberOfNewClonedFirmsToAdd;
-        List<AbstractFirm> listOfFirmsInTheSimulation = new ArrayList<>(firms);
         List<AbstractFirm> listOfClonedFirms = new ArrayList<>(numberOfNewClonedFirmsToAdd);
         List<AbstractFirm> listOfRandomFirms = new ArrayList<>(numberOfNewRandomFirmsToAdd);
-        double highestProfit = Helpers.findHighestProfitFromListOfFirms(listOfFirmsInTheSimulation); // Highest profit observed in the simulated period
-
-        for (int i = 0; i < numberOfNewClonedFirmsToAdd; i++) { // Sample existing firms with probability corresponding to their profits / maximum profit observed in the simulated year, until the desired number of firms is met
-            for (AbstractFirm firm : listOfFirmsInTheSimulation) {
-                double weight = firm.getProfit() / highestProfit;
-                if (Double.isNaN(weight)) weight = 0.5;
-                boolean add = SimulationEngine.getRnd().nextDouble() <= weight;
-                if (add) {
-                    if (cloneWithNoise) {
-                        listOfClonedFirms.add(new FirmTypeA(firm, true)); // Clone firm with some amount of noise added
-                    } else {
-                        listOfClonedFirms.add(new FirmTypeA(firm));
-                    }
-                    i++;
-                    if (i >= numberOfNewClonedFirmsToAdd) {
-                        break;
-                    }
+
+        AbstractFirm[] firmsInTheSimulation = firms.toArray(new AbstractFirm[0]);
+        if (numberOfNewClonedFirmsToAdd > 0 && firmsInTheSimulation.length > 0) {
+            firmCloningSampler = new AliasTable(calculateCloningWeights(firmsInTheSimulation)); // Built once per year
+            RandomGenerator rnd = getRandomGenerator(CounterBasedRandom.MODEL_ID, CounterBasedRandom.FIRM_CLONING_SELECTION);
+            for (int i = 0; i < numberOfNewClonedFirmsToAdd; i++) { // Sample existing firms with probability proportional to their profits, with replacement
+                AbstractFirm firm = firmsInTheSimulation[firmCloningSampler.sample(rnd)];
+                if (cloneWithNoise) {
+                    listOfClonedFirms.add(new FirmTypeA(firm, true)); // Clone firm with some amount of noise added
+                } else {
+                    listOfClonedFirms.add(new FirmTypeA(firm));
                 }
             }
         }
@@ -292,6 +405,24 @@ public class NCDESimModel extends AbstractSimulationManager implements EventList
         firms.addAll(listOfRandomFirms);
     }
 
+    /**
+     * Weights of firms in the selection of firms to clone: profit, if positive, and zero otherwise. If no firm makes a
+     * positive profit, all firms have the same weight.
+     * @param firmsToWeight firms which can be cloned
+     * @return weight of each firm
+     */
+    static double[] calculateCloningWeights(AbstractFirm[] firmsToWeight) {
+        double[] weights = new double[firmsToWeight.length];
+        boolean anyPositive = false;
+        for (int i = 0; i < firmsToWeight.length; i++) {
+            double profit = firmsToWeight[i].getProfit();
+            weights[i] = (profit > 0) ? profit : 0; // Also excludes firms with NaN profit
+            anyPositive |= weights[i] > 0;
+        }
+        if (!anyPositive) Arrays.fill(weights, 1);
+        return weights;
+    }
+
     protected void addNewPersons() {
         int numberOfNewIndividualsToAdd = perYearNumberOfPersons;
         for (int i = 0; i < numberOfNewIndividualsToAdd; i++) {
@@ -307,33 +438,86 @@ public class NCDESimModel extends AbstractSimulationManager implements EventList
         } else {
             individualsLookingForJobs = new ArrayList<>(individuals);
         }
-        Collections.shuffle(individualsLookingForJobs, SimulationEngine.getRnd()); // Shuffle individuals so the order in which they look for jobs is random
-        individualsLookingForJobs.forEach(Person::searchForJob); // Call searchForJob method on each person on the list of individuals lookingForJobs
+        Helpers.shuffle(individualsLookingForJobs, getRandomGenerator(CounterBasedRandom.MODEL_ID, CounterBasedRandom.JOB_SEARCH_ORDER)); // Shuffle individuals so the order in which they look for jobs is random
+        switch (jobMatchingMode) {
+            case Sequential -> individualsLookingForJobs.forEach(Person::searchForJob); // Call searchForJob method on each person on the list of individuals lookingForJobs
+            case Rounds -> jobMatchingRounds.match(individualsLookingForJobs); // Position in the shuffled list gives the priority of each individual
+            case DeferredAcceptance -> deferredAcceptanceMatching.match(individualsLookingForJobs);
+        }
+    }
+
+    /**
+     * Runs a yearly process of individuals, either on the structure of arrays or on each person, and in parallel if
+     * parallelUpdates is true. Processes only modify the state of the individual they are run for, so they can be
+     * split between threads.
+     * @param process process of individuals to run
+     */
+    private void updatePersons(Person.Processes process) {
+        if (personState != null) {
+            switch (process) {
+                case Ageing -> forRange(personState.getNumberOfRows(), personState::age);
+                case BeginNewYear -> forRange(personState.getNumberOfRows(), personState::beginNewYear);
+                case Update -> forRange(personState.getNumberOfRows(), personState::update);
+            }
+        } else {
+            assert individuals.isCompact() : "Persons marked for removal must be compacted before persons are updated by index";
+            forRange(individuals.size(), (from, to) -> { // The population is compact: persons are marked for removal and compacted within removePersons()
+                for (int i = from; i < to; i++) {
+                    individuals.get(i).onEvent(process);
+                }
+            });
+        }
+    }
+
+    // Runs the yearly update of firms, in parallel if parallelUpdates is true
+    private void updateFirms() {
+        AbstractFirm[] firmsToUpdate = firms.toArray(new AbstractFirm[0]);
+        forRange(firmsToUpdate.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                firmsToUpdate[i].update();
+            }
+        });
+    }
+
+    // Runs the body over the range [0, n), split between threads if parallelUpdates is true
+    void forRange(int n, ParallelLoops.RangeBody body) {
+        if (parallelLoops != null) {
+            parallelLoops.forRange(n, body);
+        } else {
+            body.run(0, n);
+        }
     }
 
     private void clearJobList() {
         jobList.clear();
     }
 
+    /**
+     * Removes firms meeting the conditions of FirmRemovalFilter in a single pass over the firms, counting the reasons
+     * for removal and releasing their employees. The conditions are evaluated in parallel if parallelUpdates is true.
+     */
     private void removeFirms() {
-        List<AbstractFirm> firmsToRemove = new ArrayList<>();
-        CollectionUtils.select(getFirms(), new FirmRemovalFilter<>(firmMinimumSize, firmMinimumProfit), firmsToRemove);
-        numberOfFirmsDestroyed = firmsToRemove.size();
+        AbstractFirm[] firmsToEvaluate = firms.toArray(new AbstractFirm[0]);
+        FirmRemovalFilter<AbstractFirm> filter = new FirmRemovalFilter<>(firmMinimumSize, firmMinimumProfit);
+        int[] exitReasons = new int[firmsToEvaluate.length];
+        forRange(firmsToEvaluate.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                exitReasons[i] = filter.exitReasons(firmsToEvaluate[i]);
+            }
+        });
 
         // Record statistics about the number of firms removed due to size / profit condition. Note: can potentially add up to more than 1 as this is one OR the other condition in the filter.
+        numberOfFirmsDestroyed = 0;
         numberOfFirmsDestroyedBecauseOfSize = 0;
         numberOfFirmsDestroyedBecauseOfProfits = 0;
-        for (AbstractFirm f : firmsToRemove) {
-            if (f.getEmployeesSet().size() <= firmMinimumSize) numberOfFirmsDestroyedBecauseOfSize++;
-            if (f.getProfit() <= firmMinimumProfit) numberOfFirmsDestroyedBecauseOfProfits++;
-        }
-
-        Iterator<AbstractFirm> itr = firmsToRemove.iterator();
-        while (itr.hasNext()) {
-            AbstractFirm firm = itr.next();
-            firm.prepareForRemoval();
-            firms.remove(firm);
-            itr.remove();
+        for (int i = 0; i < firmsToEvaluate.length; i++) {
+            int reasons = exitReasons[i];
+            if (reasons == 0) continue;
+            numberOfFirmsDestroyed++;
+            if ((reasons & FirmRemovalFilter.SIZE) != 0) numberOfFirmsDestroyedBecauseOfSize++;
+            if ((reasons & FirmRemovalFilter.PROFIT) != 0) numberOfFirmsDestroyedBecauseOfProfits++;
+            firmsToEvaluate[i].releaseAllEmployees();
+            firms.remove(firmsToEvaluate[i]);
         }
     }
 
@@ -347,20 +531,122 @@ public class NCDESimModel extends AbstractSimulationManager implements EventList
                 AbstractFirm firm = person.getJob().getEmployer();
                 firm.removeEmployee(person);
             }
-            individuals.remove(person);
+            individuals.markForRemoval(person);
             itr.remove();
         }
+        individuals.compact(); // Remove all persons marked for removal in a single pass, preserving the order of remaining persons
     }
 
     protected void createAuxiliaryObjects() {
-        jobList = new LinkedList<>(); // Initialize list of jobs available to workers
+        jobList = new JobPool(); // Initialize pool of jobs available to workers
+        if (jobSearchMode != JobSearchModes.RandomSample) {
+            jobList.setJobBook(new JobBook()); // Index of job offers by wage, used by top-of-book and full information search
+        }
+        switch (jobMatchingMode) {
+            case Rounds -> jobMatchingRounds = new JobMatchingRounds(this, maxMatchingRounds);
+            case DeferredAcceptance -> {
+                deferredAcceptanceMatching = new DeferredAcceptanceMatching(this);
+                if (jobSearchMode != JobSearchModes.RandomSample) log.warn("Deferred acceptance matching samples offers at random: job search mode " + jobSearchMode + " is ignored");
+            }
+        }
+        if (parallelUpdates) {
+            parallelLoops = new ParallelLoops(numberOfThreads);
+        }
+        if (structureOfArrays) {
+            personState = new PersonState(this);
+            individuals.setColumns(personState); // From now on, state variables of individuals are stored in personState
+        }
     }
 
-    @SuppressWarnings("unchecked")
-    // Suppress type check warning; should the type be checked when loading persons from the database?
     protected void loadAgentsFromDatabase() {
-        //Load agents from an input/input.h2.db database containing the Person table (if there is one).
-        individuals = (List<Person>) DatabaseUtils.loadTable(Person.class);
+        //Load agents from an input/input.h2.db database containing the Person table and, optionally, the FirmTypeA table
+        DatabaseAgentLoader loader = new DatabaseAgentLoader("jdbc:h2:file:" + Paths.get("input", "input").toAbsolutePath()); // Same database as the pre-processing persistence unit
+        try {
+            loader.load();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not load agents from the input database", e);
+        }
+        individuals = loader.getIndividuals();
+        firms = loader.getFirms();
+        if (firms.isEmpty()) { // Create firms as createAgents() does if the database has none
+            for (int i = 0; i < initialNumberOfFirms; i++) {
+                firms.add(new FirmTypeA(true));
+            }
+        }
+        log.info("Loaded " + individuals.size() + " persons and " + firms.size() + " firms, with " + loader.getNumberOfLinks() + " employment links");
+    }
+
+    private ModelCheckpoint readCheckpoint() {
+        try {
+            return ModelCheckpoint.read(Paths.get(resumeFromCheckpoint));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read checkpoint " + resumeFromCheckpoint, e);
+        }
+    }
+
+    private void restoreCheckpoint(ModelCheckpoint checkpoint, boolean state) {
+        try {
+            if (state) {
+                checkpoint.restoreState(this);
+                log.info("Resumed from the state at the end of year " + time);
+            } else {
+                checkpoint.restoreAgents(this);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not restore checkpoint", e);
+        }
+    }
+
+    // Creates the checkpoint pipeline, if the checkpoint folder can be created and the state of the global random number generator can be saved. Otherwise checkpointing is switched off, and the run proceeds without it.
+    private void createCheckpointPipeline() {
+        checkpointFolder = Paths.get(SimulationEngine.getInstance().getCurrentExperiment().getOutputFolder(), "checkpoints");
+        try {
+            Files.createDirectories(checkpointFolder);
+            RandomState.getState(SimulationEngine.getRnd()); // Fail here rather than at the first checkpoint
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("Checkpoints disabled, as the state of the model cannot be checkpointed: " + e.getMessage());
+            return;
+        }
+        checkpointPipeline = new AsyncExportPipeline(1); // The simulation waits if a checkpoint is still being written when the next one is due
+    }
+
+    /**
+     * writeCheckpoint() encodes the state of the model on the simulation thread, then compresses and writes it to the
+     * checkpoint folder on a background thread. Only the latest checkpoint written is kept: the previous one is deleted
+     * once the new one has been written. A checkpoint which cannot be written is reported and skipped, and does not stop
+     * later checkpoints.
+     */
+    private void writeCheckpoint() {
+        ModelCheckpoint checkpoint = ModelCheckpoint.capture(this);
+        Path path = checkpointFolder.resolve("checkpoint-" + time + ".ncpt");
+        try {
+            checkpointPipeline.submit(() -> {
+                try {
+                    checkpoint.write(path);
+                } catch (IOException e) { // Reported here rather than by the pipeline, which would refuse later checkpoints
+                    log.error("Could not write checkpoint " + path + ": " + e.getMessage());
+                    return;
+                }
+                Path previous = lastCheckpoint;
+                lastCheckpoint = path;
+                try {
+                    if (previous != null) Files.deleteIfExists(previous);
+                } catch (IOException e) {
+                    log.warn("Could not delete checkpoint " + previous + ": " + e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.error("Could not write checkpoint " + path + ": " + e.getMessage());
+        }
+    }
+
+    private void closeCheckpointPipeline() {
+        if (checkpointPipeline == null) return;
+        try {
+            checkpointPipeline.close();
+        } catch (IOException e) {
+            log.error("Could not write checkpoint: " + e.getMessage());
+        }
     }
 
     /**
@@ -371,21 +657,73 @@ public class NCDESimModel extends AbstractSimulationManager implements EventList
         if (initialNumberOfFirms > initialNumberOfPersons) throw new IllegalArgumentException("Initial number of firms must not exceed the initial number of persons. Increase the number of persons or lower the number of firms.");
     }
 
-    public double evaluateUtilityFunction(double health, double wage) { // This utility function is used to calculate person's well-being. Job offers are evaluated according to the level of well-being they generate.
+    // Copy state variables of individuals stored in personState back to their fields, so that fields read by the database and .csv export are up to date
+    public void synchronisePersonState() {
+        if (personState != null) personState.synchronise(individuals);
+    }
 
-        switch (utilityFunction) {
-            case CobbDouglas -> {
-                return cobbDouglasTFP * Math.pow(health, cobbDouglasAlpha) * Math.pow(wage, CobbDouglasUtilityBeta);
-            }
-            default -> {
-                return 0;
-            }
+    /**
+     * Returns the random number generator for draws made by an agent for a given purpose in the current year. If
+     * agentRandomStreams is true, this is a stream identified by the seed, year, agent id and purpose, so that draws do
+     * not depend on the order in which agents are processed. Otherwise, it is the global generator of the simulation.
+     * @param agentId id of the agent, or CounterBasedRandom.MODEL_ID for draws made by the model
+     * @param purpose purpose of the draws, as defined in CounterBasedRandom
+     * @return random number generator
+     */
+    public RandomGenerator getRandomGenerator(long agentId, int purpose) {
+        if (agentRandomStreams) {
+            return CounterBasedRandom.stream(randomStreamSeed, time, agentId, purpose);
         }
+        return SimulationEngine.getRnd();
+    }
+
+    /**
+     * Registers an action to run at the end of the run, after the events of the last year and before the engine is
+     * stopped, e.g. to close output files. Events scheduled at the end time with Order.AFTER_ALL may run after the engine
+     * is stopped, so they cannot be relied on for this.
+     * @param action action to run, in the order registered
+     */
+    public void runAtEnd(Runnable action) {
+        endOfRunActions.add(action);
+    }
+
+    // Issues the id of the random stream of a new firm
+    public long nextFirmStreamId() {
+        return ++firmStreamIdCounter;
+    }
+
+    /**
+     * Resolves the utilityFunction parameter to the implementation used to evaluate utility during the simulation.
+     * New functional forms are added here and in the UtilityFunctions enum. The CES and quasi-linear utilities use the
+     * TFP and alpha parameters of the Cobb-Douglas utility, so that the same parameters (and sweeps over them) apply
+     * whichever function is used.
+     * @return implementation of the utility function
+     */
+    public UtilityFunction resolveUtilityFunction() {
+        return switch (utilityFunction) {
+            case CobbDouglas -> CobbDouglasUtility.of(cobbDouglasTFP, cobbDouglasAlpha, CobbDouglasUtilityBeta);
+            case CES -> new CESUtility(cobbDouglasTFP, cobbDouglasAlpha, cesRho);
+            case QuasiLinear -> new QuasiLinearUtility(cobbDouglasTFP, cobbDouglasAlpha);
+        };
+    }
+
+    public double evaluateUtilityFunction(double health, double wage) { // This utility function is used to calculate person's well-being. Job offers are evaluated according to the level of well-being they generate.
+        return resolvedUtilityFunction.evaluate(health, wage);
     }
 
     // ---------------------------------------------------------------------
     // Access methods are handled by Lombok by default
     // ---------------------------------------------------------------------
 
+    public void setHealthDecay(Double healthDecay) {
+        this.healthDecay = healthDecay;
+        if (healthDecaySchedule != null) healthDecaySchedule.update(healthDecay, personMaximumPotentialAge, personMaximumAge);
+    }
+
+    public void setPersonMaximumPotentialAge(Integer personMaximumPotentialAge) {
+        this.personMaximumPotentialAge = personMaximumPotentialAge;
+        if (healthDecaySchedule != null) healthDecaySchedule.update(healthDecay, personMaximumPotentialAge, personMaximumAge);
+    }
+
 
 }
\ No newline at end of file
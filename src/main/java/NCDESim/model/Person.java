@@ -1,10 +1,14 @@
 package NCDESim.model;
 
-import NCDESim.algorithms.Helpers;
+import NCDESim.algorithms.CounterBasedRandom;
+import NCDESim.algorithms.utility.UtilityFunction;
+import NCDESim.model.objects.EmployeeRegistry;
 import NCDESim.model.objects.Job;
+import NCDESim.model.objects.JobPool;
 import jakarta.persistence.EmbeddedId;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Transient;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
@@ -14,6 +18,7 @@ import microsim.statistics.IDoubleSource;
 import microsim.statistics.IIntSource;
 
 import java.util.*;
+import java.util.random.RandomGenerator;
 
 @Entity
 @Getter
@@ -32,8 +37,24 @@ public class Person extends Agent implements IDoubleSource, IIntSource, Comparab
 	@Transient
 	private Job job;
 	private boolean flagChangedJobs;
-	private double testVar1 = SimulationEngine.getRnd().nextDouble();
-	private double testVar2 = Math.pow(testVar1,2);
+	private double testVar1;
+	private double testVar2;
+	@Transient
+	@ToString.Exclude
+	private int employeeIndex = EmployeeRegistry.NO_INDEX; // Position of the person in the EmployeeRegistry of its employer
+	@Transient
+	@ToString.Exclude
+	private double employerProductivity; // Productivity of the person as counted in the productivity sum of its employer
+	@Transient
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	@ToString.Exclude
+	private PersonState state; // Columns storing the state variables of the person if the model uses the structure of arrays. Null otherwise.
+	@Transient
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	@ToString.Exclude
+	private double utilityHealthTerm = Double.NaN, utilityHealthTermHealth = Double.NaN; // Health term of the utility function, memoised for the level of health it was calculated for
 
 	// ---------------------------------------------------------------------
 	// Constructors and Initialization
@@ -42,11 +63,14 @@ public class Person extends Agent implements IDoubleSource, IIntSource, Comparab
 		super();
 
 		this.key = new PanelEntityKey(idCounter++);
+		RandomGenerator rnd = model.getRandomGenerator(key.getId(), CounterBasedRandom.PERSON_CREATION);
+		this.testVar1 = rnd.nextDouble();
+		this.testVar2 = Math.pow(testVar1,2);
 		this.age = 20; // Each new person in the simulation has age 20
 		this.health = 1; // Each new person in the simulation has perfect health
 	//	this.productivity = SimulationEngine.getRnd().nextDouble(); // Each person has a random productivity between 0 and 1
 		this.productivity = 1; // Homogenous productivity
-		this.job = new Job(null, 0., 0.); // Job of the person
+		this.job = Job.UNEMPLOYED; // Job of the person
 
 		// Initialise flag variables
 		this.flagChangedJobs = false; // Indicates if individual who was employed changed jobs
@@ -60,11 +84,14 @@ public class Person extends Agent implements IDoubleSource, IIntSource, Comparab
 		super();
 
 		this.key = new PanelEntityKey(idCounter++);
+		RandomGenerator rnd = model.getRandomGenerator(key.getId(), CounterBasedRandom.PERSON_CREATION);
+		this.testVar1 = rnd.nextDouble();
+		this.testVar2 = Math.pow(testVar1,2);
 		this.age = age; // Each person has a specified age
-		this.health = SimulationEngine.getRnd().nextDouble(); // Each person has a random health level between 0 and 1
+		this.health = rnd.nextDouble(); // Each person has a random health level between 0 and 1
 		//	this.productivity = SimulationEngine.getRnd().nextDouble(); // Each person has a random productivity between 0 and 1
 		this.productivity = 1; // Homogenous productivity
-		this.job = new Job(null, 0., 0.); // Job of the person
+		this.job = Job.UNEMPLOYED; // Job of the person
 
 		// Initialise flag variables
 		this.flagChangedJobs = false; // Indicates if individual who was employed changed jobs
@@ -74,6 +101,20 @@ public class Person extends Agent implements IDoubleSource, IIntSource, Comparab
 		this.productivity_L1 = productivity; // In the first period, lagged value of productivity is equal to the value of productivity
 	}
 
+	// Constructor for persons restored from the input database or a checkpoint: no id is issued and no random numbers are drawn. Variables not set by the caller take the values of a new person.
+	public Person(PanelEntityKey key) {
+		super();
+
+		this.key = key;
+		this.age = 20;
+		this.health = 1;
+		this.productivity = 1;
+		this.job = Job.UNEMPLOYED;
+		this.flagChangedJobs = false;
+		this.health_L1 = health;
+		this.productivity_L1 = productivity;
+	}
+
 	// ---------------------------------------------------------------------
 	// EventListener
 	// ---------------------------------------------------------------------
@@ -111,7 +152,7 @@ public class Person extends Agent implements IDoubleSource, IIntSource, Comparab
 	public int getIntValue(Enum<?> variable) {
 		return switch ((IntegerVariables) variable) {
 			case Age -> getAge();
-			case ChangedJobs -> (flagChangedJobs) ? 1 : 0;
+			case ChangedJobs -> (isFlagChangedJobs()) ? 1 : 0;
 			case IsEmployed -> (job.getEmployer() != null) ? 1 : 0;
 		};
 	}
@@ -135,13 +176,13 @@ public class Person extends Agent implements IDoubleSource, IIntSource, Comparab
 	@Override
 	public double getDoubleValue(Enum<?> variable) {
 		return switch ((DoubleVariables) variable) {
-			case Age -> age;
+			case Age -> getAge();
 			case Amenities -> job.getAmenity();
 			case Count -> 1.;
-			case Health -> health;
-			case Productivity -> productivity;
+			case Health -> getHealth();
+			case Productivity -> getProductivity();
 			case Wage -> job.getWage();
-			case Utility -> utility;
+			case Utility -> getUtility();
 			case TestVar1 -> testVar1;
 			case TestVar2 -> testVar2;
 		};
@@ -153,6 +194,20 @@ public class Person extends Agent implements IDoubleSource, IIntSource, Comparab
 	// Own methods
 	// ---------------------------------------------------------------------
 
+	// Id of the next person created, saved in checkpoints
+	static long getIdCounter() {
+		return idCounter;
+	}
+
+	static void setIdCounter(long idCounter) {
+		Person.idCounter = idCounter;
+	}
+
+	// Ensures that persons created from now on have ids greater than the given id, e.g. after loading persons from a database
+	static void reserveIdsUpTo(long id) {
+		idCounter = Math.max(idCounter, id + 1);
+	}
+
 	/**
 	 * Methods related to basic characteristics below
 	 */
@@ -160,50 +215,84 @@ public class Person extends Agent implements IDoubleSource, IIntSource, Comparab
 	// Method to update lagged values at the beginning of each new year
 	public void beginNewYear() {
 		// Reset flag variables
-		this.flagChangedJobs = false; // Reset at the beginning of the time period. Set to true if individual changes jobs in searchForJob() method.
+		setFlagChangedJobs(false); // Reset at the beginning of the time period. Set to true if individual changes jobs in searchForJob() method.
 
 		// Update lagged values
-		this.health_L1 = health;
-		this.productivity_L1 = productivity;
+		setHealth_L1(getHealth());
+		setProductivity_L1(getProductivity());
 	}
 
 	public void age() {
-		age++;
+		setAge(getAge() + 1);
 	}
 
 	// Introduce health shock reducing individuals' health by model.healthShockMagnitude % occurring with a probability of model.healthShockProbability
 	public void healthShock() {
 		if (model.isHealthShockGlobal()) { // If true, apply health shock to every individual
 			if (model.getHealthShockRandomDraw() < model.getHealthShockProbability()) { // If randomly drawn double < health shock probability, health shock occurs for everyone in the simulation
-				health *= (double) (100 - model.getHealthShockMagnitudePct()) /100;
+				setHealth(getHealth() * ((double) (100 - model.getHealthShockMagnitudePct()) /100));
 			}
 		} else {
-			if (SimulationEngine.getRnd().nextDouble() < model.getHealthShockProbability()) { // If randomly drawn double < health shock probability, health shock occurs for this person
-				health *= (double) (100 - model.getHealthShockMagnitudePct()) /100;
+			if (drawIndividualHealthShock() < model.getHealthShockProbability()) { // If randomly drawn double < health shock probability, health shock occurs for this person
+				setHealth(getHealth() * ((double) (100 - model.getHealthShockMagnitudePct()) /100));
 			}
 		}
 	}
 
+	// Random draw determining if an individual health shock occurs. If agentRandomStreams is true, it is drawn from the person's own random stream, so that results do not depend on the order in which persons are updated.
+	public double drawIndividualHealthShock() {
+		if (model.isAgentRandomStreams()) {
+			return CounterBasedRandom.nextDouble(model.getRandomStreamSeed(), model.getTime(), key.getId(), CounterBasedRandom.HEALTH_SHOCK);
+		}
+		return SimulationEngine.getRnd().nextDouble();
+	}
+
 	// Method to calculate the level of health
 	public void updateHealth() {
 
-		double maximumPotentialHealthDecay = Math.pow(model.getHealthDecay(), model.getPersonMaximumPotentialAge()); // Normalisation factor based on maximum possible health decay
-		double currentHealthDecay = Math.pow(model.getHealthDecay(), age);
-		double normalisedHealthDecay = Math.pow((currentHealthDecay/maximumPotentialHealthDecay), -0.08); // Note that exponent determines the shape of the function, see the graph / Python file graphing the health decay function
-		health = Math.max(Math.min((health_L1 - normalisedHealthDecay + job.getAmenity()), 1),0); // Health score with normalised health decay
+		double normalisedHealthDecay = model.getHealthDecaySchedule().getNormalisedHealthDecay(getAge()); // Health decay normalised by maximum possible health decay, looked up by age
+		setHealth(Math.max(Math.min((getHealth_L1() - normalisedHealthDecay + job.getAmenity()), 1),0)); // Health score with normalised health decay
 //		System.out.println("For individual " + getKey().getId() + " lagged health was " + health_L1 + " normalised health decay is " + normalisedHealthDecay + " and job amenity is " + job.getAmenity() + ". New health is " + health);
 	}
 
 	public void updateProductivity() {
-		productivity = Math.pow(health, 0.5);
+		setProductivity(Math.pow(getHealth(), 0.5));
+		if (!model.isParallelUpdates()) { // If persons are updated in parallel, employers are updated afterwards by the model, in a single thread
+			reportProductivityToEmployer();
+		}
+	}
+
+	// Update the productivity sum of the employer with the change in the person's productivity since it was last counted
+	public void reportProductivityToEmployer() {
+		AbstractFirm employer = job.getEmployer();
+		if (employer != null) {
+			double productivity = getProductivity();
+			employer.changeProductivitySum(productivity - employerProductivity);
+			employerProductivity = productivity;
+		}
 	}
 
 	public void updateUtility() {
-		utility = calculateUtility();
+		setUtility(calculateUtility());
 	}
 
 	public double calculateUtility() { // Utility is also referred to as well-being in the model
-		return model.evaluateUtilityFunction(health, job.getWage());
+		return calculateUtility(job.getWage());
+	}
+
+	// Utility the person would obtain from a job paying the given wage
+	public double calculateUtility(double wage) {
+		return model.getResolvedUtilityFunction().evaluateWithHealthTerm(getUtilityHealthTerm(), wage);
+	}
+
+	// Health term of the utility function, recalculated only when health has changed (i.e. once a year)
+	public double getUtilityHealthTerm() {
+		double health = getHealth();
+		if (health != utilityHealthTermHealth) { // Always true before the first calculation, as NaN is not equal to any value
+			utilityHealthTerm = model.getResolvedUtilityFunction().healthTerm(health);
+			utilityHealthTermHealth = health;
+		}
+		return utilityHealthTerm;
 	}
 
 	/**
@@ -220,38 +309,61 @@ public class Person extends Agent implements IDoubleSource, IIntSource, Comparab
 
 	// Method to allow person to search through the list of jobs and accept one. If on the job search is turned on, currently employed individuals can move to different jobs.
 	public void searchForJob() {
-		List<Job> sampledJobList;
-		if (job.getEmployer() != null) {
-			sampledJobList = Helpers.pickNRandomJobs(model.getJobList(), model.getSearchIntensityEmployed()); // Sample n = searchIntensityEmployed jobs from all available. This produces a list of jobs available to this person.
-		} else {
-			sampledJobList = Helpers.pickNRandomJobs(model.getJobList(), model.getSearchIntensityUnemployed());
+		Job selectedJob = selectJob(getSearchIntensity()); // Consider n = searchIntensityEmployed or searchIntensityUnemployed jobs from all available
+		if (selectedJob != null && isAcceptable(selectedJob)) {
+			acceptJob(selectedJob);
 		}
-		if (sampledJobList.size() > 0) {
-			Map<Job, Double> utilityOfSampledJobsMap = calculateUtilityOfListOfJobs(sampledJobList); // A map of job - utility combinations for jobs sampled in the previous step.
-			Job selectedJob = findJobWithHighestUtility(utilityOfSampledJobsMap); // Choose the job providing maximum utility to the person, from the list of sampled jobs.
-			Job currentJob = this.job;
-			if (selectedJob.getEmployer() != null) {
-				if (job.getEmployer() != null && model.onTheJobSearch) {
-					if (model.evaluateUtilityFunction(health, selectedJob.getWage()) > Math.max(model.evaluateUtilityFunction(health, currentJob.getWage()),model.getUtilityInactive())) { // Only change jobs if utility of the new job is higher than of the current job, and above the reservation wage
-						updateEmployment(selectedJob); // Set person's job.
-
-						if (!model.destroyJobs) { // If destroyJobs parameter is set to false, the job that individual leaves is added to the list from which other individuals can sample jobs
-							model.getJobList().add(currentJob);
-						}
-
-						model.getJobList().remove(selectedJob); //Remove accepted job offer from the list of available offers.
-						setFlagChangedJobs(true); // Record the fact that employed individual changed jobs by setting flagChangedJobs to true.
-					}
-				} else {
-					if (model.evaluateUtilityFunction(health, selectedJob.getWage()) > model.getUtilityInactive()) {
-						updateEmployment(selectedJob); // Set person's job
-						model.getJobList().remove(selectedJob); //Remove accepted job offer from the list of available offers
-					}
-				}
+	}
+
+	// Number of job offers the person considers when searching for a job
+	public int getSearchIntensity() {
+		return (job.getEmployer() != null) ? model.getSearchIntensityEmployed() : model.getSearchIntensityUnemployed();
+	}
+
+	// Returns true if the person would accept the job offer. Does not modify the person, the offer or the job pool, so can be called in parallel for different persons.
+	public boolean isAcceptable(Job offer) {
+		if (offer.getEmployer() == null) return false;
+		if (job.getEmployer() != null && model.onTheJobSearch) {
+			return calculateUtility(offer.getWage()) > Math.max(calculateUtility(job.getWage()),model.getUtilityInactive()); // Only change jobs if utility of the new job is higher than of the current job, and above the reservation wage
+		}
+		return calculateUtility(offer.getWage()) > model.getUtilityInactive();
+	}
+
+	// Accept a job offer which isAcceptable() to the person
+	public void acceptJob(Job offer) {
+		Job currentJob = this.job;
+		if (currentJob.getEmployer() != null && model.onTheJobSearch) {
+			updateEmployment(offer); // Set person's job.
+
+			if (!model.destroyJobs) { // If destroyJobs parameter is set to false, the job that individual leaves is added to the list from which other individuals can sample jobs
+				model.getJobList().add(currentJob);
 			}
+
+			model.getJobList().remove(offer); //Remove accepted job offer from the list of available offers.
+			setFlagChangedJobs(true); // Record the fact that employed individual changed jobs by setting flagChangedJobs to true.
+		} else {
+			updateEmployment(offer); // Set person's job
+			model.getJobList().remove(offer); //Remove accepted job offer from the list of available offers
 		}
 	}
 
+	/**
+	 * Selects the job offer the person considers accepting, according to the job search mode of the model.
+	 * @param searchIntensity number of offers the person can consider
+	 * @return selected offer, or null if no offers are available
+	 */
+	public Job selectJob(int searchIntensity) {
+		JobPool jobPool = model.getJobList();
+		return switch (model.getJobSearchMode()) {
+			case RandomSample -> {
+				int numberOfSampledJobs = jobPool.drawSample(searchIntensity, model.getRandomGenerator(key.getId(), CounterBasedRandom.JOB_SAMPLING)); // Sampled jobs are moved to the front of the pool
+				yield (numberOfSampledJobs > 0) ? findSampledJobWithHighestUtility(jobPool, null, numberOfSampledJobs) : null; // Choose the job providing maximum utility to the person, from the jobs sampled
+			}
+			case TopOfBook -> jobPool.getJobBook().bestOfRandomSample(searchIntensity, model.getRandomGenerator(key.getId(), CounterBasedRandom.JOB_SAMPLING));
+			case FullInformation -> jobPool.getJobBook().best();
+		};
+	}
+
 	public void leaveJob() {
 		try {
 			this.job.getEmployer().removeEmployee(this);
@@ -263,37 +375,73 @@ public class Person extends Agent implements IDoubleSource, IIntSource, Comparab
 	}
 
 	public void removeJob() {
-		Job noJob = new Job(null, 0., 0.);
-		this.job = noJob;
-	}
-
-	// Method to calculate a utility of each job on the list. Returns a job - utility mapping.
-	public Map<Job, Double> calculateUtilityOfListOfJobs(List<Job> listOfJobs) {
-		Map<Job, Double> jobUtilityMapToReturn = new LinkedHashMap<>();
-		for (Job j : listOfJobs) {
-			double health = this.health;
-			double wage = j.getWage();
-			double utility = model.evaluateUtilityFunction(health, wage);
-			jobUtilityMapToReturn.put(j, utility);
-		}
-		return jobUtilityMapToReturn;
+		setJob(Job.UNEMPLOYED);
 	}
 
-	public Job findJobWithHighestUtility(Map<Job, Double> mapOfJobsAndUtilities) {
-		Job jobToReturn;
-		double maxUtilityInTheList = Collections.max(mapOfJobsAndUtilities.values()); // Find the highest utility in the map of job-utility pairs
-		List<Job> keys = new ArrayList<>(); // List of jobs with maximum utility. If more than one, pick the first one.
-		for (Map.Entry<Job, Double> entry : mapOfJobsAndUtilities.entrySet()) {
-			if (entry.getValue()==maxUtilityInTheList) { // If utility of a job is equal to the maximum observed in the list...
-				keys.add(entry.getKey()); // ...add to a list of jobs with the highest utility
+	/**
+	 * Finds the job providing the highest utility among the jobs sampled, in a single pass and without allocating. If
+	 * several jobs provide the highest utility, the one sampled first is returned.
+	 * @param jobPool pool of job offers
+	 * @param slots slots of the sampled jobs, as drawn by JobPool.sampleSlots(), or null if the jobs were sampled by
+	 *              JobPool.drawSample(), which moves them to the front of the pool
+	 * @param numberOfSampledJobs number of jobs sampled
+	 * @return the sampled job with the highest utility
+	 */
+	public Job findSampledJobWithHighestUtility(JobPool jobPool, int[] slots, int numberOfSampledJobs) {
+		UtilityFunction utilityFunction = model.getResolvedUtilityFunction();
+		double healthTerm = getUtilityHealthTerm();
+		Job jobToReturn = jobPool.get((slots != null) ? slots[0] : 0);
+		double maxUtility = utilityFunction.evaluateWithHealthTerm(healthTerm, jobToReturn.getWage());
+		for (int i = 1; i < numberOfSampledJobs; i++) {
+			Job j = jobPool.get((slots != null) ? slots[i] : i);
+			double utility = utilityFunction.evaluateWithHealthTerm(healthTerm, j.getWage());
+			if (utility > maxUtility) { // Strict inequality keeps the first job sampled in case of ties
+				maxUtility = utility;
+				jobToReturn = j;
 			}
 		}
-		if (keys.size() > 0) {
-			jobToReturn = keys.get(0);
-		} else jobToReturn = new Job(null, 0., 0.);
 		return jobToReturn;
 	}
 
+	/**
+	 * Methods related to the structure of arrays below. If the person is attached to PersonState, its state variables
+	 * are read from and written to its row in PersonState; fields are only updated by synchroniseState().
+	 */
+
+	// Copy state variables to the person's row and read them from there onwards
+	void attachState(PersonState state) {
+		int row = getPopulationIndex();
+		state.id[row] = key.getId();
+		state.age[row] = age;
+		state.health[row] = health;
+		state.health_L1[row] = health_L1;
+		state.productivity[row] = productivity;
+		state.productivity_L1[row] = productivity_L1;
+		state.utility[row] = utility;
+		state.flagChangedJobs[row] = flagChangedJobs;
+		state.setJob(row, job);
+		this.state = state;
+	}
+
+	// Copy state variables back to fields and stop reading them from the person's row
+	void detachState() {
+		synchroniseState();
+		this.state = null;
+	}
+
+	// Copy state variables from the person's row to fields, e.g. so that fields exported to the database are up to date
+	void synchroniseState() {
+		if (state == null) return;
+		int row = getPopulationIndex();
+		age = state.age[row];
+		health = state.health[row];
+		health_L1 = state.health_L1[row];
+		productivity = state.productivity[row];
+		productivity_L1 = state.productivity_L1[row];
+		utility = state.utility[row];
+		flagChangedJobs = state.flagChangedJobs[row];
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) return true;
@@ -304,11 +452,83 @@ public class Person extends Agent implements IDoubleSource, IIntSource, Comparab
 
 	@Override
 	public int compareTo(Person p) {
-		return (int) (this.getKey().getId() - p.getKey().getId());
+		return Long.compare(this.getKey().getId(), p.getKey().getId());
 	}
 
 	@Override
 	public int hashCode() {
-		return getClass().hashCode();
+		return (key != null) ? Long.hashCode(key.getId()) : 0; // Consistent with equals(), as equal keys have equal ids
+	}
+
+	// ---------------------------------------------------------------------
+	// Access methods for state variables stored in PersonState. Other access methods are handled by Lombok.
+	// ---------------------------------------------------------------------
+
+	public int getAge() {
+		return (state != null) ? state.age[getPopulationIndex()] : age;
+	}
+
+	public void setAge(int age) {
+		if (state != null) state.age[getPopulationIndex()] = age;
+		else this.age = age;
+	}
+
+	public double getHealth() {
+		return (state != null) ? state.health[getPopulationIndex()] : health;
+	}
+
+	public void setHealth(double health) {
+		if (state != null) state.health[getPopulationIndex()] = health;
+		else this.health = health;
+	}
+
+	public double getHealth_L1() {
+		return (state != null) ? state.health_L1[getPopulationIndex()] : health_L1;
+	}
+
+	public void setHealth_L1(double health_L1) {
+		if (state != null) state.health_L1[getPopulationIndex()] = health_L1;
+		else this.health_L1 = health_L1;
+	}
+
+	public double getProductivity() {
+		return (state != null) ? state.productivity[getPopulationIndex()] : productivity;
+	}
+
+	public void setProductivity(double productivity) {
+		if (state != null) state.productivity[getPopulationIndex()] = productivity;
+		else this.productivity = productivity;
+	}
+
+	public double getProductivity_L1() {
+		return (state != null) ? state.productivity_L1[getPopulationIndex()] : productivity_L1;
+	}
+
+	public void setProductivity_L1(double productivity_L1) {
+		if (state != null) state.productivity_L1[getPopulationIndex()] = productivity_L1;
+		else this.productivity_L1 = productivity_L1;
+	}
+
+	public double getUtility() {
+		return (state != null) ? state.utility[getPopulationIndex()] : utility;
+	}
+
+	public void setUtility(double utility) {
+		if (state != null) state.utility[getPopulationIndex()] = utility;
+		else this.utility = utility;
+	}
+
+	public boolean isFlagChangedJobs() {
+		return (state != null) ? state.flagChangedJobs[getPopulationIndex()] : flagChangedJobs;
+	}
+
+	public void setFlagChangedJobs(boolean flagChangedJobs) {
+		if (state != null) state.flagChangedJobs[getPopulationIndex()] = flagChangedJobs;
+		else this.flagChangedJobs = flagChangedJobs;
+	}
+
+	public void setJob(Job job) {
+		this.job = job;
+		if (state != null) state.setJob(getPopulationIndex(), job);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,176 @@
+package NCDESim.model;
+
+import NCDESim.algorithms.CounterBasedRandom;
+import NCDESim.algorithms.utility.UtilityFunction;
+import NCDESim.model.objects.Job;
+import NCDESim.model.objects.Population;
+import microsim.engine.SimulationEngine;
+
+import java.util.Arrays;
+
+/**
+ * PersonState stores state variables of persons in primitive arrays (structure of arrays), with one row per index of
+ * the population of individuals. When the store is attached to the population, each Person reads and writes its state
+ * variables from its row, and the yearly Ageing, BeginNewYear and Update processes of persons run as loops over the
+ * arrays instead of being dispatched to each person by EventGroup.addCollectionEvent.
+ * Wage and amenity of the job held by a person are copied to the store when the person's job changes, so
+ * that the yearly update does not dereference Job objects. The employer is not stored: the update of a row does not
+ * depend on it, and employers are told of changes of productivity afterwards, from the Person objects (see
+ * Person.reportProductivityToEmployer()), so an employer column would only be written and moved.
+ */
+public class PersonState implements Population.Columns<Person> {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final NCDESimModel model;
+    private int numberOfRows;
+
+    // Columns, package-private so that Person can read and write its row directly
+    double[] health, health_L1;
+    double[] productivity, productivity_L1;
+    double[] utility;
+    double[] wage, amenity;
+    int[] age;
+    long[] id; // Id of the person, used to draw from the person's random stream
+    boolean[] flagChangedJobs;
+
+    public PersonState(NCDESimModel model) {
+        this.model = model;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    // ---------------------------------------------------------------------
+    // Population.Columns
+    // ---------------------------------------------------------------------
+
+    @Override
+    public void add(int row, Person person) {
+        if (row >= age.length) allocate(Math.max(row + 1, age.length * 2));
+        numberOfRows = Math.max(numberOfRows, row + 1);
+        person.attachState(this);
+    }
+
+    @Override
+    public void remove(int row, Person person) {
+        person.detachState();
+    }
+
+    @Override
+    public void move(int fromRow, int toRow) {
+        health[toRow] = health[fromRow];
+        health_L1[toRow] = health_L1[fromRow];
+        productivity[toRow] = productivity[fromRow];
+        productivity_L1[toRow] = productivity_L1[fromRow];
+        utility[toRow] = utility[fromRow];
+        wage[toRow] = wage[fromRow];
+        amenity[toRow] = amenity[fromRow];
+        age[toRow] = age[fromRow];
+        id[toRow] = id[fromRow];
+        flagChangedJobs[toRow] = flagChangedJobs[fromRow];
+    }
+
+    @Override
+    public void truncate(int numberOfRows) {
+        this.numberOfRows = Math.min(this.numberOfRows, numberOfRows);
+    }
+
+    // ---------------------------------------------------------------------
+    // Yearly processes
+    // ---------------------------------------------------------------------
+
+    // Equivalent of Person.beginNewYear() for every row
+    public void beginNewYear() {
+        beginNewYear(0, numberOfRows);
+    }
+
+    // Equivalent of Person.beginNewYear() for rows from (inclusive) to to (exclusive)
+    public void beginNewYear(int from, int to) {
+        Arrays.fill(flagChangedJobs, from, to, false);
+        System.arraycopy(health, from, health_L1, from, to - from);
+        System.arraycopy(productivity, from, productivity_L1, from, to - from);
+    }
+
+    // Equivalent of Person.age() for every row
+    public void age() {
+        age(0, numberOfRows);
+    }
+
+    // Equivalent of Person.age() for rows from (inclusive) to to (exclusive)
+    public void age(int from, int to) {
+        for (int i = from; i < to; i++) {
+            age[i]++;
+        }
+    }
+
+    // Equivalent of Person.updateHealth(), healthShock(), updateProductivity() and updateUtility() for every row
+    public void update() {
+        update(0, numberOfRows);
+    }
+
+    // Equivalent of Person.updateHealth(), healthShock(), updateProductivity() and updateUtility() for rows from (inclusive) to to (exclusive)
+    public void update(int from, int to) {
+        HealthDecaySchedule healthDecaySchedule = model.getHealthDecaySchedule();
+        UtilityFunction utilityFunction = model.getResolvedUtilityFunction();
+        double healthShockProbability = model.getHealthShockProbability();
+        double healthShockMultiplier = (double) (100 - model.getHealthShockMagnitudePct()) / 100;
+        boolean healthShockGlobal = model.isHealthShockGlobal();
+        boolean globalHealthShockOccurs = model.getHealthShockRandomDraw() < healthShockProbability;
+        boolean drawFromPersonStreams = model.isAgentRandomStreams();
+        long randomStreamSeed = model.getRandomStreamSeed();
+        int time = model.getTime();
+
+        for (int i = from; i < to; i++) {
+            double normalisedHealthDecay = healthDecaySchedule.getNormalisedHealthDecay(age[i]);
+            double h = Math.max(Math.min((health_L1[i] - normalisedHealthDecay + amenity[i]), 1), 0);
+            if (healthShockGlobal) {
+                if (globalHealthShockOccurs) h *= healthShockMultiplier;
+            } else {
+                double draw = drawFromPersonStreams
+                        ? CounterBasedRandom.nextDouble(randomStreamSeed, time, id[i], CounterBasedRandom.HEALTH_SHOCK) // As in Person.drawIndividualHealthShock()
+                        : SimulationEngine.getRnd().nextDouble(); // Drawn in the same order as persons are iterated over, as in Person.healthShock()
+                if (draw < healthShockProbability) h *= healthShockMultiplier;
+            }
+            health[i] = h;
+            productivity[i] = Math.pow(h, 0.5);
+            utility[i] = utilityFunction.evaluate(h, wage[i]);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Own methods
+    // ---------------------------------------------------------------------
+
+    // Copy job characteristics to the row
+    void setJob(int row, Job job) {
+        wage[row] = job.getWage();
+        amenity[row] = job.getAmenity();
+    }
+
+    // Copy the columns of all persons back to their fields, e.g. before persons are exported to the database or .csv files
+    public void synchronise(Population<Person> individuals) {
+        for (Person person : individuals) {
+            person.synchroniseState();
+        }
+    }
+
+    private void allocate(int capacity) {
+        health = copyOf(health, capacity);
+        health_L1 = copyOf(health_L1, capacity);
+        productivity = copyOf(productivity, capacity);
+        productivity_L1 = copyOf(productivity_L1, capacity);
+        utility = copyOf(utility, capacity);
+        wage = copyOf(wage, capacity);
+        amenity = copyOf(amenity, capacity);
+        age = (age == null) ? new int[capacity] : Arrays.copyOf(age, capacity);
+        id = (id == null) ? new long[capacity] : Arrays.copyOf(id, capacity);
+        flagChangedJobs = (flagChangedJobs == null) ? new boolean[capacity] : Arrays.copyOf(flagChangedJobs, capacity);
+    }
+
+    private static double[] copyOf(double[] column, int capacity) {
+        return (column == null) ? new double[capacity] : Arrays.copyOf(column, capacity);
+    }
+
+    public int getNumberOfRows() {
+        return numberOfRows;
+    }
+}
@@ -0,0 +1,84 @@
+package NCDESim.model.objects;
+
+import NCDESim.model.Person;
+
+import java.util.*;
+
+/**
+ * EmployeeRegistry holds the employees of a firm in a dense array. Each person carries its position in the array of its
+ * employer (its employee index), so employees are added and removed in O(1), by identity, without the node allocation
+ * and comparisons of a sorted set. A removed employee is replaced by the last employee in the array, so iteration order
+ * depends only on the sequence of hires and departures, and is therefore deterministic.
+ * Firms change their registry only through AbstractFirm.hireEmployee(), removeEmployee() and releaseAllEmployees(), so
+ * that the productivity and wage sums of the firm follow its employees. releaseAllEmployees() empties the registry when
+ * the firm exits, and covers what removeAllEmployees() did before it was removed.
+ */
+public class EmployeeRegistry extends AbstractCollection<Person> {
+
+    public static final int NO_INDEX = -1; // Employee index of a person not registered as an employee
+
+    private final ArrayList<Person> employees;
+
+    public EmployeeRegistry() {
+        this.employees = new ArrayList<>();
+    }
+
+    /**
+     * @param person employee to register. A person can be registered with a single firm at a time.
+     * @return true if the registry changed
+     */
+    @Override
+    public boolean add(Person person) {
+        if (contains(person)) return false;
+        person.setEmployeeIndex(employees.size());
+        employees.add(person);
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!contains(o)) return false;
+        Person person = (Person) o;
+        int index = person.getEmployeeIndex();
+        Person last = employees.remove(employees.size() - 1);
+        if (last != person) {
+            employees.set(index, last);
+            last.setEmployeeIndex(index);
+        }
+        person.setEmployeeIndex(NO_INDEX);
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Person person)) return false;
+        int index = person.getEmployeeIndex();
+        return index >= 0 && index < employees.size() && employees.get(index) == person;
+    }
+
+    @Override
+    public void clear() {
+        for (Person person : employees) {
+            person.setEmployeeIndex(NO_INDEX);
+        }
+        employees.clear();
+    }
+
+    @Override
+    public int size() {
+        return employees.size();
+    }
+
+    @Override
+    public Iterator<Person> iterator() {
+        return Collections.unmodifiableList(employees).iterator();
+    }
+
+    /**
+     * @param index employee index
+     * @return employee at the given index
+     */
+    public Person get(int index) {
+        return employees.get(index);
+    }
+}
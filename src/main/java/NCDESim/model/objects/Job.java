@@ -1,19 +1,81 @@
 package NCDESim.model.objects;
 
 import NCDESim.model.AbstractFirm;
-import lombok.AllArgsConstructor;
-import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
-@Data
-@AllArgsConstructor
+/*
+Jobs are compared by identity rather than by value: two offers posted by the same firm have the same employer, amenity and
+wage, but are distinct vacancies.
+Persons without an employer all hold the shared UNEMPLOYED job, which cannot be modified. Jobs with an employer are reused by
+their employer from year to year when vacant (see AbstractFirm.postJobOffers()).
+ */
+@Getter
+@Setter
+@ToString
 public class Job implements Comparable<Job> {
 
+    public static final Job UNEMPLOYED = new Unemployed(); //Job of persons without an employer
+
     private AbstractFirm employer; //Firm which offers the job
 
     private double amenity; //Level of amenity
 
     private double wage; //Level of wage
 
+    @ToString.Exclude
+    private int slot = JobPool.NO_SLOT; //Position of the job in the pool of job offers, issued when the job is posted. NO_SLOT if the job is not on offer.
+
+    @ToString.Exclude
+    private boolean filled; //True if the job is held by an employee of the employer
+
+    @ToString.Exclude
+    private long sequence; //Sequence number issued by the JobBook, used to order jobs with equal wage and employer
+
+    public Job(AbstractFirm employer, double amenity, double wage) {
+        this.employer = employer;
+        this.amenity = amenity;
+        this.wage = wage;
+    }
+
+    public boolean isOnOffer() {
+        return slot != JobPool.NO_SLOT;
+    }
+
+    // Job without an employer, shared by all persons who do not work
+    private static final class Unemployed extends Job {
+
+        private Unemployed() {
+            super(null, 0., 0.);
+        }
+
+        @Override
+        public void setEmployer(AbstractFirm employer) {
+            throw new UnsupportedOperationException("The unemployed job cannot be modified");
+        }
+
+        @Override
+        public void setAmenity(double amenity) {
+            throw new UnsupportedOperationException("The unemployed job cannot be modified");
+        }
+
+        @Override
+        public void setWage(double wage) {
+            throw new UnsupportedOperationException("The unemployed job cannot be modified");
+        }
+
+        @Override
+        public void setSlot(int slot) {
+            throw new UnsupportedOperationException("The unemployed job cannot be posted");
+        }
+
+        @Override
+        public void setFilled(boolean filled) {
+            throw new UnsupportedOperationException("The unemployed job cannot be filled");
+        }
+    }
+
     /*
     The comparator allows jobs to be compared one to another. This allows a list of jobs to be ordered.
     Jobs are ordered by the wages they offer. TODO: order jobs by well-being they offer?
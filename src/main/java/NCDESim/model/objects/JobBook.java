@@ -0,0 +1,205 @@
+package NCDESim.model.objects;
+
+import NCDESim.algorithms.CounterBasedRandom;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * JobBook orders job offers by wage, so that the best remaining offer, or the best of k offers drawn at random, can be
+ * found in O(log J) time, where J is the number of offers. It is used as an index of the JobPool when persons search
+ * for jobs with full information or top-of-book search (see JobSearchModes).
+ * Offers are stored in a treap (a binary search tree balanced by random priorities), in which each node records the
+ * size of its subtree so that offers can be selected by rank. Offers are ordered by wage, then by employer id, then by
+ * the order in which they were added. Priorities are derived from that order, so the structure of the tree does not
+ * depend on the random number generator of the simulation.
+ */
+public class JobBook {
+
+    private static final class Node {
+        final Job job;
+        final long priority;
+        int size = 1;
+        Node left, right;
+
+        Node(Job job, long priority) {
+            this.job = job;
+            this.priority = priority;
+        }
+    }
+
+    private Node root;
+    private long nextSequence; // Sequence number issued to the next offer added
+    private Node splitLeft, splitRight; // Results of split()
+    private int[] drawnRanks = new int[8]; // Ranks drawn by bestOfRandomSample()
+
+    /**
+     * @param job offer to add. Must have an employer.
+     */
+    public void add(Job job) {
+        job.setSequence(nextSequence++);
+        Node node = new Node(job, CounterBasedRandom.mix(job.getSequence()));
+        split(root, job);
+        Node right = splitRight;
+        root = merge(merge(splitLeft, node), right);
+    }
+
+    /**
+     * @param job offer to remove
+     * @return true if the offer was in the book
+     */
+    public boolean remove(Job job) {
+        int sizeBefore = size();
+        root = remove(root, job);
+        return size() < sizeBefore;
+    }
+
+    public void clear() {
+        root = null;
+    }
+
+    // Sequence number issued to the next offer added. Restored from a checkpoint, so that offers are ordered as in the run checkpointed.
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    public void setNextSequence(long nextSequence) {
+        this.nextSequence = nextSequence;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * @return offer with the highest wage, or null if the book is empty
+     */
+    public Job best() {
+        if (root == null) return null;
+        Node node = root;
+        while (node.right != null) node = node.right;
+        return node.job;
+    }
+
+    /**
+     * @param rank rank of the offer, from 0 (lowest wage) to size() - 1 (highest wage)
+     * @return offer with the given rank
+     */
+    public Job select(int rank) {
+        if (rank < 0 || rank >= size()) throw new IndexOutOfBoundsException("Rank " + rank + " is outside the job book of size " + size());
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (rank < leftSize) {
+                node = node.left;
+            } else if (rank == leftSize) {
+                return node.job;
+            } else {
+                rank -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Draws n offers at random without replacement and returns the one with the highest wage. As offers are ordered by
+     * wage, this only requires drawing n ranks (using Floyd's algorithm) and selecting the highest of them.
+     * @param n number of offers to draw. If the book holds fewer offers, the best of all offers is returned.
+     * @param rnd random number generator used to draw the offers
+     * @return offer with the highest wage among those drawn, or null if the book is empty
+     */
+    public Job bestOfRandomSample(int n, RandomGenerator rnd) {
+        if (drawnRanks.length < n) drawnRanks = new int[n];
+        return bestOfRandomSample(n, rnd, drawnRanks);
+    }
+
+    /**
+     * As bestOfRandomSample(int, RandomGenerator), using the array provided to store the ranks drawn, so that several
+     * persons can draw offers at the same time.
+     * @param n number of offers to draw
+     * @param rnd random number generator used to draw the offers
+     * @param ranks array receiving the ranks drawn. Must hold at least min(n, size()) elements.
+     * @return offer with the highest wage among those drawn, or null if the book is empty
+     */
+    public Job bestOfRandomSample(int n, RandomGenerator rnd, int[] ranks) {
+        int size = size();
+        int k = Math.min(n, size);
+        if (k <= 0) return null;
+        int highestRank = -1;
+        int drawn = 0;
+        for (int j = size - k; j < size; j++) {
+            int rank = rnd.nextInt(j + 1);
+            if (isDrawn(ranks, drawn, rank)) rank = j;
+            ranks[drawn++] = rank;
+            if (rank > highestRank) highestRank = rank;
+        }
+        return select(highestRank);
+    }
+
+    private static boolean isDrawn(int[] ranks, int drawn, int rank) {
+        for (int i = 0; i < drawn; i++) {
+            if (ranks[i] == rank) return true;
+        }
+        return false;
+    }
+
+    // Order of offers in the book
+    private static int compare(Job a, Job b) {
+        int result = Double.compare(a.getWage(), b.getWage());
+        if (result == 0) result = Long.compare(a.getEmployer().getKey().getId(), b.getEmployer().getKey().getId());
+        if (result == 0) result = Long.compare(a.getSequence(), b.getSequence());
+        return result;
+    }
+
+    // Split the tree into offers ordered before the job (splitLeft) and the others (splitRight)
+    private void split(Node node, Job job) {
+        if (node == null) {
+            splitLeft = null;
+            splitRight = null;
+        } else if (compare(node.job, job) < 0) {
+            split(node.right, job);
+            node.right = splitLeft;
+            update(node);
+            splitLeft = node;
+        } else {
+            split(node.left, job);
+            node.left = splitRight;
+            update(node);
+            splitRight = node;
+        }
+    }
+
+    // Merge two trees, where all offers in left are ordered before all offers in right
+    private static Node merge(Node left, Node right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        } else {
+            right.left = merge(left, right.left);
+            update(right);
+            return right;
+        }
+    }
+
+    private static Node remove(Node node, Job job) {
+        if (node == null) return null;
+        if (node.job == job) return merge(node.left, node.right);
+        if (compare(job, node.job) < 0) {
+            node.left = remove(node.left, job);
+        } else {
+            node.right = remove(node.right, job);
+        }
+        update(node);
+        return node;
+    }
+
+    private static void update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+
+    private static int size(Node node) {
+        return (node == null) ? 0 : node.size;
+    }
+}
@@ -0,0 +1,165 @@
+package NCDESim.model.objects;
+
+import java.util.*;
+import java.util.random.RandomGenerator;
+
+/**
+ * JobPool holds the job offers posted by firms in a given year and made available to persons searching for a job.
+ * Offers are stored in a dense array, so that persons can sample offers without replacement in O(k), the offer accepted
+ * by a person can be removed in O(1) by swapping it with the last offer in the array, and a job left by a person can be
+ * put back in the pool in O(1).
+ * Each offer carries its position in the array (its slot), issued when the offer is posted. Offers are therefore
+ * accepted, withdrawn and recycled by identity, without scanning the pool or comparing the values of offers.
+ * Note that the order of offers in the pool is not meaningful: sampling and removal both reorder the array.
+ */
+public class JobPool extends AbstractCollection<Job> {
+
+    public static final int NO_SLOT = -1; // Slot of a job which is not on offer
+
+    private final ArrayList<Job> jobs; // Offers currently available
+    private JobBook jobBook; // Optional index of the offers ordered by wage, maintained when offers are added and removed
+
+    public JobPool() {
+        this.jobs = new ArrayList<>();
+    }
+
+    /**
+     * Posts a job offer to the pool, issuing its slot. Used both for new offers and to recycle a job left by a person.
+     * Offers which are already on offer are not added again.
+     * @param job offer to add
+     * @return true if the pool changed
+     */
+    @Override
+    public boolean add(Job job) {
+        if (job.isOnOffer()) return false;
+        job.setSlot(jobs.size());
+        jobs.add(job);
+        if (jobBook != null) jobBook.add(job);
+        return true;
+    }
+
+    /**
+     * Removes a job offer from the pool, when it is accepted by a person or withdrawn by a firm, by moving the last
+     * offer into its slot.
+     * @param o offer to remove
+     * @return true if the offer was in the pool
+     */
+    @Override
+    public boolean remove(Object o) {
+        if (!contains(o)) return false;
+        Job job = (Job) o;
+        int slot = job.getSlot();
+        int last = jobs.size() - 1;
+        Job lastJob = jobs.remove(last);
+        if (slot != last) {
+            jobs.set(slot, lastJob);
+            lastJob.setSlot(slot);
+        }
+        job.setSlot(NO_SLOT);
+        if (jobBook != null) jobBook.remove(job);
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Job job) || !job.isOnOffer()) return false;
+        int slot = job.getSlot();
+        return slot < jobs.size() && jobs.get(slot) == job;
+    }
+
+    @Override
+    public void clear() {
+        for (Job job : jobs) {
+            job.setSlot(NO_SLOT);
+        }
+        jobs.clear();
+        if (jobBook != null) jobBook.clear();
+    }
+
+    @Override
+    public int size() {
+        return jobs.size();
+    }
+
+    @Override
+    public Iterator<Job> iterator() {
+        return Collections.unmodifiableList(jobs).iterator();
+    }
+
+    /**
+     * Samples n job offers from the pool without replacement, using a partial Fisher-Yates shuffle of the pool, in O(n)
+     * and without allocating: sampled offers are moved to the front of the pool, where they can be read with get(0) to
+     * get(k - 1) until the pool is next modified.
+     * @param n number of offers to sample
+     * @param rnd random number generator used to draw the offers
+     * @return number of offers sampled, k = min(n, size())
+     */
+    public int drawSample(int n, RandomGenerator rnd) {
+        int size = jobs.size();
+        int k = Math.min(n, size);
+        for (int i = 0; i < k; i++) {
+            swap(i, i + rnd.nextInt(size - i));
+        }
+        return k;
+    }
+
+    /**
+     * Samples n job offers from the pool without replacement, as drawSample(), but leaving the pool unchanged, so that
+     * several persons can sample offers at the same time. Slots are drawn using Floyd's algorithm, in O(n^2) for small n.
+     * @param n number of offers to sample
+     * @param rnd random number generator used to draw the offers
+     * @param slots array receiving the slots of the sampled offers. Must hold at least min(n, size()) elements.
+     * @return number of offers sampled, k = min(n, size())
+     */
+    public int sampleSlots(int n, RandomGenerator rnd, int[] slots) {
+        int size = jobs.size();
+        int k = Math.min(n, size);
+        int drawn = 0;
+        for (int j = size - k; j < size; j++) {
+            int slot = rnd.nextInt(j + 1);
+            if (contains(slots, drawn, slot)) slot = j;
+            slots[drawn++] = slot;
+        }
+        return k;
+    }
+
+    /**
+     * @param slot position in the pool
+     * @return offer stored at the given slot
+     */
+    public Job get(int slot) {
+        return jobs.get(slot);
+    }
+
+    public JobBook getJobBook() {
+        return jobBook;
+    }
+
+    /**
+     * Attaches a JobBook to the pool. Offers already in the pool are added to the book.
+     * @param jobBook index of the offers ordered by wage
+     */
+    public void setJobBook(JobBook jobBook) {
+        this.jobBook = jobBook;
+        for (Job job : jobs) {
+            jobBook.add(job);
+        }
+    }
+
+    private static boolean contains(int[] values, int n, int value) {
+        for (int i = 0; i < n; i++) {
+            if (values[i] == value) return true;
+        }
+        return false;
+    }
+
+    private void swap(int i, int j) {
+        if (i == j) return;
+        Job jobI = jobs.get(i);
+        Job jobJ = jobs.get(j);
+        jobs.set(i, jobJ);
+        jobs.set(j, jobI);
+        jobJ.setSlot(i);
+        jobI.setSlot(j);
+    }
+}
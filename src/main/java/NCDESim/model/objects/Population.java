@@ -0,0 +1,192 @@
+package NCDESim.model.objects;
+
+import NCDESim.model.Agent;
+
+import java.util.*;
+
+/**
+ * Population stores the agents of one type simulated by the model in a dense array. Each agent records its index in
+ * the array, so that it can be removed in O(1) without scanning the population or relying on equals().
+ * Agents can be removed immediately by swapping the last agent into their position, or marked for removal and removed
+ * in a single pass by compact(), which preserves the order of the remaining agents.
+ * Population is a Collection, so it can be passed to CrossSection, DataExport and EventGroup.addCollectionEvent.
+ * Optionally, state variables of agents can be stored in primitive arrays indexed in the same way as the population
+ * (see Columns), which are kept aligned with the population when agents are added, moved and removed.
+ *
+ * @param <T> The type of agent stored, must extend the Agent class.
+ */
+public class Population<T extends Agent> extends AbstractCollection<T> {
+
+    public static final int NO_INDEX = -1; // Index of an agent which does not belong to a population
+
+    private final ArrayList<T> agents; // Agents in the population. Agents marked for removal leave a null entry until compact() is called.
+    private int numberMarkedForRemoval;
+    private Columns<T> columns; // Optional column store of agent state, indexed by population index
+
+    /**
+     * Columns define a store of agent state organised in arrays, with one row per index of the population.
+     * @param <T> The type of agent stored
+     */
+    public interface Columns<T> {
+        void add(int row, T agent); // Copy the state of the agent to the row, and attach the agent to the store
+        void remove(int row, T agent); // Copy the state stored in the row back to the agent, and detach the agent from the store
+        void move(int fromRow, int toRow); // Copy the state stored in one row to another row
+        void truncate(int numberOfRows); // Discard rows from numberOfRows onwards
+    }
+
+    public Population() {
+        this.agents = new ArrayList<>();
+    }
+
+    public Population(Collection<? extends T> agentsToAdd) {
+        this.agents = new ArrayList<>(agentsToAdd.size());
+        addAll(agentsToAdd);
+    }
+
+    @Override
+    public boolean add(T agent) {
+        if (contains(agent)) return false;
+        int index = agents.size();
+        agent.setPopulationIndex(index);
+        agents.add(agent);
+        if (columns != null) columns.add(index, agent);
+        return true;
+    }
+
+    /**
+     * Attaches a column store to the population. Agents already in the population are added to the store.
+     * @param columns store of agent state
+     */
+    public void setColumns(Columns<T> columns) {
+        this.columns = columns;
+        for (int i = 0; i < agents.size(); i++) {
+            if (agents.get(i) != null) columns.add(i, agents.get(i));
+        }
+    }
+
+    /**
+     * Removes an agent by moving the last agent of the population into its index. Note that this changes the order
+     * in which agents are iterated over.
+     * @param o agent to remove
+     * @return true if the agent was in the population
+     */
+    @Override
+    public boolean remove(Object o) {
+        if (!contains(o)) return false;
+        int index = ((Agent) o).getPopulationIndex();
+        T agent = agents.get(index);
+        int last = agents.size() - 1;
+        if (columns != null) columns.remove(index, agent);
+        T lastAgent = agents.remove(last);
+        if (index != last) {
+            agents.set(index, lastAgent);
+            if (lastAgent != null) lastAgent.setPopulationIndex(index);
+            if (columns != null) columns.move(last, index);
+        }
+        if (columns != null) columns.truncate(last);
+        agent.setPopulationIndex(NO_INDEX);
+        return true;
+    }
+
+    /**
+     * Marks an agent for removal. The agent is no longer part of the population, but the array is only compacted
+     * when compact() is called.
+     * @param agent agent to remove
+     * @return true if the agent was in the population
+     */
+    public boolean markForRemoval(T agent) {
+        if (!contains(agent)) return false;
+        if (columns != null) columns.remove(agent.getPopulationIndex(), agent);
+        agents.set(agent.getPopulationIndex(), null);
+        agent.setPopulationIndex(NO_INDEX);
+        numberMarkedForRemoval++;
+        return true;
+    }
+
+    /**
+     * Removes the entries of agents marked for removal in a single pass, preserving the order of the remaining agents.
+     */
+    public void compact() {
+        if (numberMarkedForRemoval == 0) return;
+        int target = 0;
+        for (int i = 0; i < agents.size(); i++) {
+            T agent = agents.get(i);
+            if (agent != null) {
+                agents.set(target, agent);
+                agent.setPopulationIndex(target);
+                if (columns != null && i != target) columns.move(i, target);
+                target++;
+            }
+        }
+        agents.subList(target, agents.size()).clear();
+        if (columns != null) columns.truncate(target);
+        numberMarkedForRemoval = 0;
+    }
+
+    /**
+     * Between markForRemoval() and compact(), indices run up to the number of agents before removal rather than size(),
+     * and agents marked for removal leave null entries. Loops over indices should therefore only run on a compacted
+     * population (see isCompact()), or skip null entries.
+     * @param index index in the population
+     * @return agent stored at the index, or null if it was marked for removal and compact() has not been called since
+     */
+    public T get(int index) {
+        return agents.get(index);
+    }
+
+    // True if no agent is marked for removal, so that get() returns an agent for every index below size()
+    public boolean isCompact() {
+        return numberMarkedForRemoval == 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Agent agent)) return false;
+        int index = agent.getPopulationIndex();
+        return index >= 0 && index < agents.size() && agents.get(index) == agent;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < agents.size(); i++) {
+            T agent = agents.get(i);
+            if (agent != null) {
+                if (columns != null) columns.remove(i, agent);
+                agent.setPopulationIndex(NO_INDEX);
+            }
+        }
+        agents.clear();
+        if (columns != null) columns.truncate(0);
+        numberMarkedForRemoval = 0;
+    }
+
+    @Override
+    public int size() {
+        return agents.size() - numberMarkedForRemoval;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private int next = advance(0);
+
+            private int advance(int from) {
+                while (from < agents.size() && agents.get(from) == null) from++;
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < agents.size();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                T agent = agents.get(next);
+                next = advance(next + 1);
+                return agent;
+            }
+        };
+    }
+}
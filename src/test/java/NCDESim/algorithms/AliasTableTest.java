@@ -0,0 +1,60 @@
+package NCDESim.algorithms;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AliasTableTest {
+
+    private static final int NUMBER_OF_DRAWS = 1_000_000;
+
+    @Test
+    void drawsIndicesInProportionToTheirWeights() {
+        double[] weights = {3., 0., 1., 0.5, 5.5};
+        AliasTable table = new AliasTable(weights);
+        double sum = 10.;
+        int[] counts = new int[weights.length];
+        SplittableRandom rnd = new SplittableRandom(20240611L);
+        for (int i = 0; i < NUMBER_OF_DRAWS; i++) {
+            counts[table.sample(rnd)]++;
+        }
+        for (int i = 0; i < weights.length; i++) {
+            double p = weights[i] / sum;
+            assertEquals(p, table.getProbability(i), 1e-15);
+            double sd = Math.sqrt(p * (1 - p) / NUMBER_OF_DRAWS);
+            assertEquals(p, (double) counts[i] / NUMBER_OF_DRAWS, 5 * sd + 1e-12, "Share of draws of index " + i);
+        }
+        assertEquals(0, counts[1]); // Zero weight is never drawn
+    }
+
+    @Test
+    void singleWeightIsAlwaysDrawn() {
+        AliasTable table = new AliasTable(new double[] {0.25});
+        SplittableRandom rnd = new SplittableRandom(20240611L);
+        assertEquals(1, table.size());
+        assertEquals(1., table.getProbability(0));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, table.sample(rnd));
+        }
+    }
+
+    @Test
+    void equalWeightsAreDrawnUniformly() {
+        AliasTable table = new AliasTable(new double[] {1., 1., 1., 1.});
+        for (int i = 0; i < table.size(); i++) {
+            assertEquals(0.25, table.getProbability(i));
+        }
+    }
+
+    @Test
+    void invalidWeightsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[] {0., 0.}));
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[] {1., -0.5}));
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[] {1., Double.NaN}));
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[] {1., Double.POSITIVE_INFINITY}));
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[0]));
+    }
+}
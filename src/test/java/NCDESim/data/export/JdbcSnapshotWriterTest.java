@@ -0,0 +1,166 @@
+package NCDESim.data.export;
+
+import jakarta.persistence.MappedSuperclass;
+import jakarta.persistence.Transient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes snapshots of test agents to an in-memory H2 database (H2 is a dependency of JAS-mine) and reads them back.
+ */
+class JdbcSnapshotWriterTest {
+
+    private static final String TABLE = "TESTAGENT";
+
+    private Connection connection;
+
+    enum Sector { Public, Private }
+
+    @MappedSuperclass
+    static class TestAgentBase {
+        double wealth;
+    }
+
+    static class TestAgent extends TestAgentBase {
+        static int numberOfAgents; // Static fields are not exported
+        long personalId;
+        int age;
+        boolean employed;
+        String name;
+        Sector sector;
+        @Transient
+        double cachedUtility; // Not exported
+        transient double scratch; // Not exported
+        List<String> tags = new ArrayList<>(); // Type not exported
+
+        TestAgent(long key, int age, double wealth, Sector sector) {
+            this.personalId = key;
+            this.age = age;
+            this.wealth = wealth;
+            this.sector = sector;
+            this.name = "agent " + key;
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:" + getClass().getSimpleName() + System.nanoTime(), "sa", "");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void writesOneRowPerAgentAndSnapshot() throws SQLException {
+        List<TestAgent> agents = List.of(new TestAgent(1, 20, 1.5, Sector.Public), new TestAgent(2, 30, 2.5, Sector.Private), new TestAgent(3, 40, 3.5, Sector.Public));
+        try (JdbcSnapshotWriter<TestAgent> writer = new JdbcSnapshotWriter<>(connection, TestAgent.class, agent -> agent.personalId, 7, 1, true)) {
+            writer.export(0., agents);
+            agents.get(1).age++;
+            agents.get(1).wealth = 4.25;
+            agents.get(1).employed = true;
+            agents.get(1).sector = Sector.Public;
+            writer.export(1., agents);
+        }
+
+        assertEquals(6, queryLong("SELECT COUNT(*) FROM " + TABLE));
+        assertEquals(3, queryLong("SELECT COUNT(*) FROM " + TABLE + " WHERE SIMULATION_TIME = 1"));
+        assertEquals(6, queryLong("SELECT COUNT(*) FROM " + TABLE + " WHERE SIMULATION_RUN = 7"));
+        try (Statement statement = connection.createStatement();
+             ResultSet row = statement.executeQuery("SELECT AGE, WEALTH, EMPLOYED, NAME, SECTOR FROM " + TABLE + " WHERE ID = 2 AND SIMULATION_TIME = 1")) {
+            assertTrue(row.next());
+            assertEquals(31, row.getInt("AGE"));
+            assertEquals(4.25, row.getDouble("WEALTH"));
+            assertTrue(row.getBoolean("EMPLOYED"));
+            assertEquals("agent 2", row.getString("NAME"));
+            assertEquals(Sector.Public.ordinal(), row.getInt("SECTOR")); // Enums are stored by ordinal
+            assertFalse(row.next());
+        }
+        assertEquals(List.of("ID", "SIMULATION_TIME", "SIMULATION_RUN"), columns().subList(0, 3)); // Key columns first
+        assertEquals(Set.of("ID", "SIMULATION_TIME", "SIMULATION_RUN", "PERSONALID", "AGE", "EMPLOYED", "NAME", "SECTOR", "WEALTH"), new HashSet<>(columns())); // Static, transient and @Transient fields, and fields of other types, are not exported
+        assertTrue(hasIndex(TABLE + "_KEY"), "Deferred index is created on close");
+    }
+
+    @Test
+    void appendsToAnExistingTable() throws SQLException {
+        List<TestAgent> agents = List.of(new TestAgent(1, 20, 1.5, Sector.Public), new TestAgent(2, 30, 2.5, Sector.Private));
+        try (JdbcSnapshotWriter<TestAgent> writer = new JdbcSnapshotWriter<>(connection, TestAgent.class, agent -> agent.personalId, 1, 10, false)) {
+            writer.export(0., agents);
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE " + TABLE + " ADD COLUMN NOTE VARCHAR"); // Nullable columns which are not written are allowed
+        }
+        try (JdbcSnapshotWriter<TestAgent> writer = new JdbcSnapshotWriter<>(connection, TestAgent.class, agent -> agent.personalId, 2, 10, false)) {
+            writer.export(0., agents);
+            writer.export(1., agents);
+        }
+
+        assertEquals(2, queryLong("SELECT COUNT(*) FROM " + TABLE + " WHERE SIMULATION_RUN = 1"));
+        assertEquals(4, queryLong("SELECT COUNT(*) FROM " + TABLE + " WHERE SIMULATION_RUN = 2"));
+        assertEquals(6, queryLong("SELECT COUNT(*) FROM " + TABLE + " WHERE NOTE IS NULL"));
+    }
+
+    @Test
+    void rejectsAnExistingTableWithoutAColumnWritten() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE " + TABLE + " (ID BIGINT NOT NULL, SIMULATION_TIME DOUBLE NOT NULL, SIMULATION_RUN BIGINT NOT NULL, AGE INT)");
+        }
+        SQLException e = assertThrows(SQLException.class, () -> new JdbcSnapshotWriter<>(connection, TestAgent.class, (TestAgent agent) -> agent.personalId, 1, 1, false));
+        assertTrue(e.getMessage().contains("without column"), e.getMessage());
+    }
+
+    @Test
+    void rejectsAnExistingTableWithARequiredColumnNotWritten() throws SQLException {
+        try (JdbcSnapshotWriter<TestAgent> writer = new JdbcSnapshotWriter<>(connection, TestAgent.class, agent -> agent.personalId, 1, 1, false)) {
+            writer.export(0., List.of());
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE " + TABLE + " ADD COLUMN HEIGHT DOUBLE NOT NULL");
+        }
+        SQLException e = assertThrows(SQLException.class, () -> new JdbcSnapshotWriter<>(connection, TestAgent.class, (TestAgent agent) -> agent.personalId, 2, 1, false));
+        assertTrue(e.getMessage().contains("HEIGHT"), e.getMessage());
+    }
+
+    private long queryLong(String query) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rows = statement.executeQuery(query)) {
+            assertTrue(rows.next());
+            return rows.getLong(1);
+        }
+    }
+
+    private List<String> columns() throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (ResultSet rows = connection.getMetaData().getColumns(null, null, TABLE, null)) {
+            while (rows.next()) {
+                columns.add(rows.getString("COLUMN_NAME"));
+            }
+        }
+        return columns;
+    }
+
+    private boolean hasIndex(String name) throws SQLException {
+        try (ResultSet indexes = connection.getMetaData().getIndexInfo(null, null, TABLE, false, false)) {
+            while (indexes.next()) {
+                if (name.equals(indexes.getString("INDEX_NAME"))) return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,75 @@
+package NCDESim.experiment;
+
+import NCDESim.algorithms.StreamingStatistics;
+import NCDESim.model.SimulationStatistics;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the setters bound by NCDESimCollector.buildObjects() all resolve against SimulationStatistics, so that a
+ * renamed field fails here rather than at the start of a run.
+ */
+class DistributionalStatsSettersTest {
+
+    // Prefixes bound by NCDESimCollector.buildObjects(), in the same order
+    private static final List<String> COLLECTOR_PREFIXES = List.of(
+            "outcome_person_age",
+            "outcome_person_health",
+            "outcome_person_productivity",
+            "outcome_person_utility",
+            "outcome_person_amenities",
+            "outcome_person_wage",
+            "outcome_firm_age",
+            "outcome_firm_jobs_posted",
+            "outcome_firm_profit",
+            "outcome_firm_size");
+
+    @Test
+    void everyCollectorPrefixResolves() {
+        for (String prefix : COLLECTOR_PREFIXES) {
+            assertDoesNotThrow(() -> new DistributionalStatsSetters(prefix), prefix);
+        }
+    }
+
+    @Test
+    void everyDistributionInSimulationStatisticsIsRecordedByTheCollector() {
+        for (Field field : SimulationStatistics.class.getDeclaredFields()) {
+            String name = field.getName();
+            if (name.startsWith("outcome_") && name.endsWith("_mean")) {
+                String prefix = name.substring(0, name.length() - "_mean".length());
+                assertTrue(COLLECTOR_PREFIXES.contains(prefix), "No setters bound for " + prefix);
+            }
+        }
+    }
+
+    @Test
+    void misspelledFieldIsRejected() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new DistributionalStatsSetters("outcome_person_amenity"));
+        assertTrue(e.getMessage().contains("setOutcome_person_amenity_mean"), e.getMessage());
+    }
+
+    @Test
+    void setRecordsEveryStatistic() {
+        StreamingStatistics distribution = new StreamingStatistics(true);
+        Arrays.stream(new double[] {1., 2., 2., 3., 7.}).forEach(distribution::add);
+        SimulationStatistics statistics = new SimulationStatistics();
+
+        new DistributionalStatsSetters("outcome_firm_size").set(statistics, distribution);
+
+        assertEquals(distribution.getMean(), statistics.getOutcome_firm_size_mean());
+        assertEquals(distribution.getMedian(), statistics.getOutcome_firm_size_median());
+        assertEquals(distribution.getMin(), statistics.getOutcome_firm_size_min());
+        assertEquals(distribution.getMax(), statistics.getOutcome_firm_size_max());
+        assertEquals(distribution.getStandardDeviation(), statistics.getOutcome_firm_size_sd());
+        assertEquals(distribution.getKurtosis(), statistics.getOutcome_firm_size_kurtosis());
+        assertEquals(distribution.getSkewness(), statistics.getOutcome_firm_size_skewness());
+    }
+}
@@ -0,0 +1,96 @@
+package NCDESim.model;
+
+import NCDESim.model.objects.EmployeeRegistry;
+import NCDESim.model.objects.Job;
+import microsim.data.db.PanelEntityKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the productivity and wage sums maintained by a firm stay within the tolerance documented in
+ * AbstractFirm.calculateProfit() of the sums recalculated over its employees, through many years of hires, exits and
+ * changes of productivity.
+ */
+class AbstractFirmSumsTest {
+
+    private static final int NUMBER_OF_EMPLOYEES = 1000;
+    private static final int YEARS = 100;
+    private static final double SHARE_LEAVING = 0.05; // Share of employees replaced each year
+
+    @Test
+    void sumsStayWithinToleranceOfRecalculatedSums() {
+        SplittableRandom rnd = new SplittableRandom(20240611L);
+        FirmTypeA firm = new FirmTypeA();
+        firm.setEmployees(new EmployeeRegistry());
+        firm.setAmenity(0.3);
+        firm.setCostOfAmenity(0.2);
+        long nextId = 1;
+        List<Person> employees = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_EMPLOYEES; i++) {
+            employees.add(hire(firm, nextId++, rnd));
+        }
+
+        long changes = NUMBER_OF_EMPLOYEES;
+        double largestSum = firm.getProductivitySum() + firm.getWageSum();
+        for (int year = 0; year < YEARS; year++) {
+            for (Person employee : employees) {
+                employee.setProductivity(rnd.nextDouble());
+                employee.reportProductivityToEmployer();
+            }
+            changes += NUMBER_OF_EMPLOYEES;
+            for (int i = 0; i < employees.size(); i++) {
+                if (rnd.nextDouble() < SHARE_LEAVING) {
+                    firm.removeEmployee(employees.get(i));
+                    employees.set(i, hire(firm, nextId++, rnd));
+                    changes += 2;
+                }
+            }
+            largestSum = Math.max(largestSum, firm.getProductivitySum() + firm.getWageSum());
+
+            double productivitySum = 0, wageSum = 0, profit = 0;
+            double unitCostOfAmenity = firm.getAmenity() * firm.getCostOfAmenity();
+            for (Person employee : firm.getEmployees()) { // Sums and profit as calculated before the sums were maintained
+                productivitySum += employee.getProductivity();
+                wageSum += employee.getJob().getWage();
+                profit += employee.getProductivity() - employee.getJob().getWage() - unitCostOfAmenity;
+            }
+            double tolerance = (changes + NUMBER_OF_EMPLOYEES) * Math.ulp(largestSum); // Errors of the maintained sums, and of the sums recalculated here
+            assertEquals(productivitySum, firm.getProductivitySum(), tolerance, "Productivity sum in year " + year);
+            assertEquals(wageSum, firm.getWageSum(), tolerance, "Wage sum in year " + year);
+            assertEquals(profit, firm.calculateProfit(), 2 * tolerance, "Profit in year " + year);
+        }
+    }
+
+    @Test
+    void sumsAreClearedWhenTheLastEmployeeLeaves() {
+        SplittableRandom rnd = new SplittableRandom(20240611L);
+        FirmTypeA firm = new FirmTypeA();
+        firm.setEmployees(new EmployeeRegistry());
+        List<Person> employees = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            employees.add(hire(firm, i + 1, rnd));
+        }
+        for (Person employee : employees) {
+            employee.setProductivity(rnd.nextDouble());
+            employee.reportProductivityToEmployer();
+        }
+        for (Person employee : employees) {
+            firm.removeEmployee(employee);
+        }
+        assertEquals(0., firm.getProductivitySum());
+        assertEquals(0., firm.getWageSum());
+        assertEquals(0., firm.calculateProfit());
+    }
+
+    private static Person hire(FirmTypeA firm, long id, SplittableRandom rnd) {
+        Person person = new Person(new PanelEntityKey(id));
+        person.setProductivity(rnd.nextDouble());
+        firm.hireEmployee(person, new Job(firm, firm.getAmenity(), rnd.nextDouble()));
+        return person;
+    }
+}
@@ -0,0 +1,36 @@
+package NCDESim.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Checks the weights with which NCDESimModel.addNewFirms() selects the firms to clone.
+ */
+class CloningWeightsTest {
+
+    @Test
+    void weightsArePositiveProfits() {
+        assertArrayEquals(new double[] {2., 0., 0.5, 0., 0.}, NCDESimModel.calculateCloningWeights(firmsWithProfits(2., -1., 0.5, 0., Double.NaN)));
+    }
+
+    @Test
+    void allFirmsHaveTheSameWeightIfNoneMakesAPositiveProfit() {
+        assertArrayEquals(new double[] {1., 1., 1., 1.}, NCDESimModel.calculateCloningWeights(firmsWithProfits(-3., 0., -0.5, Double.NaN)));
+    }
+
+    @Test
+    void singleFirmIsAlwaysSelected() {
+        assertArrayEquals(new double[] {1.5}, NCDESimModel.calculateCloningWeights(firmsWithProfits(1.5)));
+        assertArrayEquals(new double[] {1.}, NCDESimModel.calculateCloningWeights(firmsWithProfits(-2.)));
+    }
+
+    private static AbstractFirm[] firmsWithProfits(double... profits) {
+        AbstractFirm[] firms = new AbstractFirm[profits.length];
+        for (int i = 0; i < profits.length; i++) {
+            firms[i] = new FirmTypeA();
+            firms[i].setProfit(profits[i]);
+        }
+        return firms;
+    }
+}
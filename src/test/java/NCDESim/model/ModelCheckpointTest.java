@@ -0,0 +1,104 @@
+package NCDESim.model;
+
+import microsim.engine.SimulationEngine;
+import microsim.event.EventGroup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that a run resumed from a checkpoint continues exactly as the run checkpointed: the model is simulated for a
+ * few years and checkpointed, simulated further, then restored from the checkpoint and simulated for the same number of
+ * years again. Both runs must end in the same state, byte for byte. Similarly, each run of a warm start sweep must start
+ * from the state at the end of the burn-in.
+ * Years are run by firing the events of createYearlyEvents() directly, so that the model can be restored in place
+ * without rebuilding the schedule of the engine. A single model is registered with the engine, as agents find their
+ * model through the engine by class name, and is built again by each test.
+ */
+class ModelCheckpointTest {
+
+    private static final int YEARS_BEFORE_CHECKPOINT = 10;
+    private static final int YEARS_AFTER_CHECKPOINT = 10;
+
+    private static NCDESimModel model;
+
+    @TempDir
+    Path folder;
+
+    @BeforeEach
+    void setUp() {
+        if (model == null) {
+            model = new NCDESimModel();
+            SimulationEngine.getInstance().addSimulationManager(model);
+        }
+        model.setFixRandomSeed(true);
+        model.setSeedIfFixed(20240611L);
+        model.setInitialNumberOfPersons(200);
+        model.setInitialNumberOfFirms(20);
+        model.setAmenityUnitCost(new NCDESimModel().getAmenityUnitCost());
+        model.setWarmStart(null);
+        model.setTime(0); // Not reset by buildObjects(), which is called again by each test
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void resumedRunMatchesTheRunCheckpointed(boolean structureOfArrays) throws IOException {
+        model.setStructureOfArrays(structureOfArrays);
+        model.buildObjects();
+        runYears(model, YEARS_BEFORE_CHECKPOINT);
+        Path checkpoint = folder.resolve("checkpoint.ncpt");
+        ModelCheckpoint.capture(model).write(checkpoint);
+        runYears(model, YEARS_AFTER_CHECKPOINT);
+        Path uninterrupted = folder.resolve("uninterrupted.ncpt");
+        ModelCheckpoint.capture(model).write(uninterrupted);
+
+        model.setWarmStart(ModelCheckpoint.read(checkpoint)); // Restores the agents, counters and random state saved, replacing those of the model
+        model.buildObjects();
+        assertEquals(YEARS_BEFORE_CHECKPOINT, model.getTime());
+        Path restored = folder.resolve("restored.ncpt");
+        ModelCheckpoint.capture(model).write(restored);
+        assertEquals(-1L, Files.mismatch(checkpoint, restored), "State restored from the checkpoint differs from the state saved");
+
+        runYears(model, YEARS_AFTER_CHECKPOINT);
+        Path resumed = folder.resolve("resumed.ncpt");
+        ModelCheckpoint.capture(model).write(resumed);
+        assertEquals(YEARS_BEFORE_CHECKPOINT + YEARS_AFTER_CHECKPOINT, model.getTime());
+        assertEquals(-1L, Files.mismatch(uninterrupted, resumed), "Resumed run differs from the run checkpointed");
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void warmStartReproducesTheBurnInState(boolean structureOfArrays) throws IOException {
+        model.setStructureOfArrays(structureOfArrays);
+        model.buildObjects();
+        runYears(model, YEARS_BEFORE_CHECKPOINT); // Burn-in
+        ModelCheckpoint burnInState = ModelCheckpoint.capture(model); // As kept by the burn-in run of NCDESimMultiRun
+        Path burnIn = folder.resolve("burn-in.ncpt");
+        burnInState.write(burnIn);
+
+        for (double amenityUnitCost : new double[] {0.01, 0.51}) { // Runs of the sweep change parameters, which are not part of the state
+            model.setAmenityUnitCost(amenityUnitCost);
+            model.setWarmStart(burnInState); // The same state is restored by each run of the sweep
+            model.buildObjects();
+            Path warmStart = folder.resolve("warm-start-" + amenityUnitCost + ".ncpt");
+            ModelCheckpoint.capture(model).write(warmStart);
+            assertEquals(YEARS_BEFORE_CHECKPOINT, model.getTime());
+            assertEquals(-1L, Files.mismatch(burnIn, warmStart), "Warm start differs from the state at the end of the burn-in");
+            runYears(model, 1); // The run continues from the burn-in, and must not modify the state it was restored from
+        }
+    }
+
+    private static void runYears(NCDESimModel model, int years) {
+        EventGroup yearlyEvents = model.createYearlyEvents(); // Created again after a restore, which replaces the collections of agents
+        for (int year = 0; year < years; year++) {
+            yearlyEvents.fireEvent();
+        }
+    }
+}
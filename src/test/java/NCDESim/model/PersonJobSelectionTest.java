@@ -0,0 +1,129 @@
+package NCDESim.model;
+
+import NCDESim.algorithms.utility.CobbDouglasUtility;
+import NCDESim.model.objects.Job;
+import NCDESim.model.objects.JobPool;
+import microsim.data.db.PanelEntityKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Checks that Person.findSampledJobWithHighestUtility() selects the same offer as the map-based selection it replaced
+ * (calculateUtilityOfListOfJobs() followed by findJobWithHighestUtility(), reproduced below).
+ */
+class PersonJobSelectionTest {
+
+    private static final long SEED = 20240611L;
+    private static final int POOL_SIZE = 500;
+    private static final int SEARCH_INTENSITY = 10;
+
+    private NCDESimModel model;
+    private Person person;
+
+    @BeforeEach
+    void setUp() {
+        model = new NCDESimModel();
+        model.setResolvedUtilityFunction(CobbDouglasUtility.of(1., 0.5, 0.5));
+        person = new Person(new PanelEntityKey(1L));
+        person.setModel(model);
+        person.setHealth(0.7);
+    }
+
+    @Test
+    void selectsTheSameJobAsTheMapBasedSelection() {
+        SplittableRandom wages = new SplittableRandom(SEED);
+        JobPool jobPool = new JobPool();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            jobPool.add(new Job(null, 0., Math.floor(wages.nextDouble() * 50) / 50)); // Coarse wages, so that samples contain ties
+        }
+
+        SplittableRandom sampling = new SplittableRandom(SEED);
+        for (int search = 0; search < 1000; search++) {
+            int numberOfSampledJobs = jobPool.drawSample(SEARCH_INTENSITY, sampling);
+            assertEquals(SEARCH_INTENSITY, numberOfSampledJobs);
+            List<Job> sampledJobs = new ArrayList<>();
+            for (int i = 0; i < numberOfSampledJobs; i++) {
+                sampledJobs.add(jobPool.get(i));
+            }
+            Job expected = findJobWithHighestUtility(calculateUtilityOfListOfJobs(sampledJobs));
+            assertSame(expected, person.findSampledJobWithHighestUtility(jobPool, null, numberOfSampledJobs));
+        }
+
+        int[] slots = new int[SEARCH_INTENSITY];
+        for (int search = 0; search < 1000; search++) {
+            int numberOfSampledJobs = jobPool.sampleSlots(SEARCH_INTENSITY, sampling, slots);
+            List<Job> sampledJobs = new ArrayList<>();
+            for (int i = 0; i < numberOfSampledJobs; i++) {
+                sampledJobs.add(jobPool.get(slots[i]));
+            }
+            Job expected = findJobWithHighestUtility(calculateUtilityOfListOfJobs(sampledJobs));
+            assertSame(expected, person.findSampledJobWithHighestUtility(jobPool, slots, numberOfSampledJobs));
+        }
+    }
+
+    @Test
+    void tiesGoToTheJobSampledFirst() {
+        JobPool jobPool = new JobPool();
+        for (int i = 0; i < 20; i++) {
+            jobPool.add(new Job(null, 0., 0.5));
+        }
+        int numberOfSampledJobs = jobPool.drawSample(SEARCH_INTENSITY, new SplittableRandom(SEED));
+        assertSame(jobPool.get(0), person.findSampledJobWithHighestUtility(jobPool, null, numberOfSampledJobs));
+
+        int[] slots = new int[SEARCH_INTENSITY];
+        numberOfSampledJobs = jobPool.sampleSlots(SEARCH_INTENSITY, new SplittableRandom(SEED), slots);
+        assertSame(jobPool.get(slots[0]), person.findSampledJobWithHighestUtility(jobPool, slots, numberOfSampledJobs));
+    }
+
+    @Test
+    void searchIntensityAtLeastThePoolSizeConsidersEveryJob() {
+        JobPool jobPool = new JobPool();
+        double[] wages = {0.3, 0.9, 0.1, 0.9, 0.5};
+        for (double wage : wages) {
+            jobPool.add(new Job(null, 0., wage));
+        }
+        List<Job> allJobs = new ArrayList<>(jobPool);
+
+        for (int n : new int[] {wages.length, wages.length + 5}) {
+            int numberOfSampledJobs = jobPool.drawSample(n, new SplittableRandom(SEED));
+            assertEquals(wages.length, numberOfSampledJobs);
+            List<Job> sampledJobs = new ArrayList<>();
+            for (int i = 0; i < numberOfSampledJobs; i++) {
+                sampledJobs.add(jobPool.get(i));
+            }
+            Job selected = person.findSampledJobWithHighestUtility(jobPool, null, numberOfSampledJobs);
+            assertSame(findJobWithHighestUtility(calculateUtilityOfListOfJobs(sampledJobs)), selected);
+            assertEquals(0.9, selected.getWage());
+            assertEquals(new HashSet<>(allJobs), new HashSet<>(sampledJobs));
+        }
+    }
+
+    // Map-based selection replaced by findSampledJobWithHighestUtility(), as it was in Person
+    private Map<Job, Double> calculateUtilityOfListOfJobs(List<Job> listOfJobs) {
+        Map<Job, Double> jobUtilityMapToReturn = new LinkedHashMap<>();
+        for (Job j : listOfJobs) {
+            jobUtilityMapToReturn.put(j, person.calculateUtility(j.getWage()));
+        }
+        return jobUtilityMapToReturn;
+    }
+
+    private static Job findJobWithHighestUtility(Map<Job, Double> mapOfJobsAndUtilities) {
+        double maxUtilityInTheList = Collections.max(mapOfJobsAndUtilities.values());
+        List<Job> keys = new ArrayList<>();
+        for (Map.Entry<Job, Double> entry : mapOfJobsAndUtilities.entrySet()) {
+            if (entry.getValue() == maxUtilityInTheList) keys.add(entry.getKey());
+        }
+        return keys.isEmpty() ? Job.UNEMPLOYED : keys.get(0);
+    }
+}